@@ -0,0 +1,229 @@
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import javax.imageio.ImageIO;
+
+
+public class BatchRender {
+
+	/*
+	 * Command line renderer, draws one fractal to a PNG file
+	 * without opening any window so it works on headless machines.
+	 *
+	 * java BatchRender [options]
+	 *   -o file.png            output file (default fractal.png)
+	 *   -size WxH              size of the image (default 1920x1080)
+	 *   -iter n                maximum number of iterations (default 1000)
+	 *   -center re,im          centre of the view, as many digits as needed (default -0.5,0 or 0,0 for julia)
+	 *   -width w               width of the view in the complex plane (default 4), the height follows the image
+	 *   -view xmin,xmax,ymin,ymax   bounds of the view instead of -center and -width
+	 *   -julia re,im           draw the julia set of this constant instead of the mandelbrot set
+	 *   -threads n             number of workers (default one per core)
+	 *   -palette name          colours of the image (default Classic)
+	 *   -poster scratch        render out of core for images too big for memory, see PosterRender,
+	 *                          the counts are kept in the scratch file and the render carries on
+	 *                          from it if it is stopped
+	 *   -farm host:port,...    compute the tiles on these FarmWorker processes, see RenderFarm
+	 */
+
+	private String output = "fractal.png";
+	private int imageWidth = 1920;
+	private int imageHeight = 1080;
+	private int maxIter = 1000;
+	private BigDecimal centerRe, centerIm;
+	private double viewWidth = 4.0;
+	private double[] bounds;
+	private Complex julia;
+	private int threads = RenderEngine.defaultParallelism();
+	private Palette palette = Palette.CLASSIC;
+	private File scratch; // poster mode when set
+	private String farmAddresses;
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		BatchRender batch = new BatchRender();
+		try {
+			batch.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("usage: java BatchRender [-o file.png] [-size WxH] [-iter n] [-center re,im] [-width w]");
+			System.err.println("                        [-view xmin,xmax,ymin,ymax] [-julia re,im] [-threads n]");
+			System.err.println("                        [-palette name] [-poster scratch] [-farm host:port,...]");
+			System.exit(1);
+		}
+
+		RenderFarm farm = null;
+		if (batch.farmAddresses != null) {
+			try {
+				farm = RenderFarm.connect(batch.farmAddresses);
+			} catch (IOException e) {
+				System.err.println("Could not connect to the render farm " + batch.farmAddresses + ": " + e.getMessage());
+				System.exit(1);
+			}
+		}
+
+		boolean complete;
+		try {
+			complete = batch.run(farm);
+		} catch (IOException e) {
+			System.err.println("Could not write " + batch.output + ": " + e.getMessage());
+			complete = false;
+		} finally {
+			if (farm != null)
+				farm.close();
+		}
+		if (!complete)
+			System.exit(1);
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + option);
+			String value = args[++i];
+
+			try {
+				switch (option) {
+				case "-o":
+					output = value;
+					break;
+				case "-size":
+					String[] size = value.toLowerCase().split("x");
+					imageWidth = Integer.parseInt(size[0]);
+					imageHeight = Integer.parseInt(size[1]);
+					break;
+				case "-iter":
+					maxIter = Integer.parseInt(value);
+					break;
+				case "-center":
+					String[] center = value.split(",");
+					centerRe = new BigDecimal(center[0].trim());
+					centerIm = new BigDecimal(center[1].trim());
+					break;
+				case "-width":
+					viewWidth = Double.parseDouble(value);
+					break;
+				case "-view":
+					String[] b = value.split(",");
+					bounds = new double[4];
+					for (int k = 0; k < 4; k++)
+						bounds[k] = Double.parseDouble(b[k].trim());
+					break;
+				case "-julia":
+					String[] c = value.split(",");
+					julia = new Complex(Double.parseDouble(c[0].trim()), Double.parseDouble(c[1].trim()));
+					break;
+				case "-threads":
+					threads = Integer.parseInt(value);
+					break;
+				case "-palette":
+					palette = null;
+					for (Palette p : Palette.getPalettes())
+						if (p.getName().equalsIgnoreCase(value))
+							palette = p;
+					if (palette == null)
+						throw new IllegalArgumentException("Unknown palette " + value);
+					break;
+				case "-poster":
+					scratch = new File(value);
+					break;
+				case "-farm":
+					farmAddresses = value;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + option);
+				}
+			} catch (NumberFormatException | IndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("Incorrect value for " + option + ": " + value);
+			}
+		}
+
+		if (imageWidth <= 0 || imageHeight <= 0 || maxIter <= 0 || threads <= 0 || viewWidth <= 0)
+			throw new IllegalArgumentException("Sizes, iterations and threads have to be positive");
+	}
+
+	private Viewport viewport() {
+		if (bounds != null)
+			return Viewport.fromBounds(bounds[0], bounds[1], bounds[2], bounds[3]);
+
+		BigDecimal re = centerRe, im = centerIm;
+		if (re == null) {
+			re = (julia == null) ? new BigDecimal("-0.5") : BigDecimal.ZERO;
+			im = BigDecimal.ZERO;
+		}
+		return new Viewport(re, im, viewWidth, viewWidth * imageHeight / imageWidth);
+	}
+
+	/* @return false if the image could not be rendered */
+	private boolean run(RenderFarm farm) throws IOException {
+		int type = (julia == null) ? FractalRenderer.TYPE_MANDELBROT : FractalRenderer.TYPE_JULIA;
+		if (scratch != null) {
+			runPoster(type, farm);
+			return true;
+		}
+		return runFrame(type, farm);
+	}
+
+	private boolean runFrame(int type, RenderFarm farm) throws IOException {
+		RenderEngine engine = new RenderEngine(threads);
+
+		FractalRenderer renderer = new FractalRenderer(type, engine);
+		renderer.setSize(imageWidth, imageHeight);
+		renderer.setView(viewport());
+		renderer.setMaxIter(maxIter);
+		renderer.setPalette(palette);
+		renderer.setFarm(farm);
+		if (julia != null)
+			renderer.setJuliaPoint(julia.getRe(), julia.getIm());
+
+		long start = System.nanoTime();
+		boolean complete = renderer.render();
+		long elapsed = System.nanoTime() - start;
+		engine.shutdown();
+
+		// an incomplete image is not written, it would look like a finished one
+		if (!complete) {
+			System.err.println("The render of " + output + " was stopped before the image was complete, nothing was written");
+			return false;
+		}
+		ImageIO.write(renderer.getImage(), "png", new File(output));
+
+		// the iteration buffer holds every count once the frame is done, the pixels filled
+		// by the subdivision or answered by a shortcut count as if they had been iterated
+		long counts = 0;
+		for (int iter : renderer.getIterBuffer())
+			counts += iter;
+
+		double seconds = elapsed / 1e9;
+		long pixels = (long)imageWidth * imageHeight;
+		System.out.printf("%s: %dx%d, %d iterations max, %s, %s%n", output, imageWidth, imageHeight,
+						  maxIter, renderer.getPrecisionTier().getLabel(), workers(farm));
+		System.out.printf("rendered in %.3f s, %.2f Mpixels/s, iteration count sum %.1f M%n", seconds,
+						  pixels / seconds / 1e6, counts / 1e6);
+		return true;
+	}
+
+	/* the image is never held in memory, only the rows being written */
+	private void runPoster(int type, RenderFarm farm) throws IOException {
+		PosterRender poster = new PosterRender(type, viewport(), imageWidth, imageHeight, maxIter,
+											   (julia != null) ? julia.getRe() : 0.0,
+											   (julia != null) ? julia.getIm() : 0.0, palette);
+		poster.setFarm(farm);
+
+		long start = System.nanoTime();
+		poster.render(scratch, new File(output), threads);
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		System.out.printf("%s: %dx%d poster, %d iterations max, %s, %s%n", output, imageWidth, imageHeight,
+						  maxIter, poster.getPrecisionTier().getLabel(), workers(farm));
+		System.out.printf("rendered in %.3f s, the scratch file %s can be deleted%n", seconds, scratch);
+	}
+
+	private String workers(RenderFarm farm) {
+		if (farm == null)
+			return threads + " threads";
+		return farm.getWorkers() + " farm workers, " + farm.getThreads() + " threads";
+	}
+}
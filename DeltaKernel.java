@@ -0,0 +1,9 @@
+public interface DeltaKernel {
+
+	/*
+	 * Escape time kernel for views too deep for doubles.
+	 * Points are given as their offset from the centre of the view,
+	 * which stays small enough for doubles however deep the zoom is.
+	 */
+	int iterate(double dcr, double dci, int maxIter);
+}
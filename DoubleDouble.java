@@ -0,0 +1,98 @@
+import java.math.BigDecimal;
+
+
+public class DoubleDouble implements DeltaKernel {
+
+	/*
+	 * Mandelbrot kernel in double-double arithmetic: every number is the
+	 * unevaluated sum hi + lo of two doubles, which gives twice the 53 bits
+	 * of a double, less a bit or two lost to the rounding of each operation.
+	 * Used for zooms too deep for doubles but not deep enough for the
+	 * reference orbit of perturbation to pay off.
+	 * All the arithmetic is written out on local doubles so nothing is allocated.
+	 */
+
+	/* bits of precision of a double-double, PrecisionTier switches to perturbation from them */
+	public static final int PRECISION_BITS = 2 * 53;
+
+	// centre of the view split in hi + lo
+	private final double centerReHi, centerReLo;
+	private final double centerImHi, centerImLo;
+
+	public DoubleDouble(Viewport view) {
+		centerReHi = view.getCenterRe().doubleValue();
+		centerReLo = view.getCenterRe().subtract(new BigDecimal(centerReHi)).doubleValue();
+		centerImHi = view.getCenterIm().doubleValue();
+		centerImLo = view.getCenterIm().subtract(new BigDecimal(centerImHi)).doubleValue();
+	}
+
+	@Override
+	public int iterate(double dcr, double dci, int maxIter) {
+		// c = centre + offset, exact sum of the hi parts then normalized
+		double s = centerReHi + dcr;
+		double v = s - centerReHi;
+		double e = (centerReHi - (s - v)) + (dcr - v) + centerReLo;
+		double crh = s + e;
+		double crl = e - (crh - s);
+
+		s = centerImHi + dci;
+		v = s - centerImHi;
+		e = (centerImHi - (s - v)) + (dci - v) + centerImLo;
+		double cih = s + e;
+		double cil = e - (cih - s);
+
+		double zrh = 0.0, zrl = 0.0;
+		double zih = 0.0, zil = 0.0;
+		int count = 0;
+
+		while (count < maxIter) {
+			// zr^2
+			double p = zrh * zrh;
+			e = Math.fma(zrh, zrh, -p) + 2.0 * zrh * zrl;
+			double x2h = p + e;
+			double x2l = e - (x2h - p);
+
+			// zi^2
+			p = zih * zih;
+			e = Math.fma(zih, zih, -p) + 2.0 * zih * zil;
+			double y2h = p + e;
+			double y2l = e - (y2h - p);
+
+			if (x2h + y2h >= EscapeTime.BAILOUT_SQUARED)
+				break;
+
+			// zr * zi
+			p = zrh * zih;
+			e = Math.fma(zrh, zih, -p) + (zrh * zil + zrl * zih);
+			double xyh = p + e;
+			double xyl = e - (xyh - p);
+
+			// zr' = zr^2 - zi^2 + cr
+			s = x2h - y2h;
+			v = s - x2h;
+			e = (x2h - (s - v)) + (-y2h - v) + (x2l - y2l);
+			double th = s + e;
+			double tl = e - (th - s);
+
+			s = th + crh;
+			v = s - th;
+			e = (th - (s - v)) + (crh - v) + (tl + crl);
+			zrh = s + e;
+			zrl = e - (zrh - s);
+
+			// zi' = 2 zr zi + ci, doubling is exact
+			th = 2.0 * xyh;
+			tl = 2.0 * xyl;
+
+			s = th + cih;
+			v = s - th;
+			e = (th - (s - v)) + (cih - v) + (tl + cil);
+			zih = s + e;
+			zil = e - (zih - s);
+
+			count++;
+		}
+
+		return count;
+	}
+}
@@ -0,0 +1,232 @@
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class EscapeTime {
+
+	/*
+	 * Escape time kernels working on primitive doubles only.
+	 * z stays in local variables and the bailout |z| < 2 is tested
+	 * on the squared modulus, so nothing is allocated in the loop.
+	 *
+	 * Points inside the set never escape and would run to maxIter,
+	 * two shortcuts stop them early:
+	 * - the main cardioid and the period 2 bulb are tested analytically (Mandelbrot only)
+	 * - the orbit is compared to a saved point whose distance doubles
+	 *   every time (Brent), if it comes back the orbit is periodic
+	 *
+	 * The kernels can save the z where they stopped, a point that did not
+	 * escape is then resumed with a higher maxIter instead of starting over.
+	 */
+
+	public static final double BAILOUT_SQUARED = 4.0;
+
+	/* how close the orbit has to come back to be considered periodic */
+	static final double PERIOD_EPSILON = 1e-14;
+
+	private static volatile boolean cardioidCheck = !Boolean.getBoolean("fractal.nocardioid");
+	private static volatile boolean periodicityCheck = !Boolean.getBoolean("fractal.noperiodicity");
+
+	/* number of points stopped by each shortcut and iterations they did not have to run */
+	private static final LongAdder cardioidHits = new LongAdder();
+	private static final LongAdder periodicHits = new LongAdder();
+	private static final LongAdder iterationsSaved = new LongAdder();
+
+	/* kernel used for rows of pixels, the vector one with -Dfractal.vector=true if it can be loaded */
+	private static final RowKernel rowKernel = loadRowKernel();
+
+	private EscapeTime() {}
+
+	public static RowKernel getRowKernel() {
+		return rowKernel;
+	}
+
+	private static RowKernel loadRowKernel() {
+		if (Boolean.getBoolean("fractal.vector")) {
+			// compiled on its own since it needs the jdk.incubator.vector module
+			try {
+				return (RowKernel) Class.forName("VectorKernel").getDeclaredConstructor().newInstance();
+			} catch (Exception | LinkageError e) {
+				System.err.println("Vector kernel not available, using the scalar one (" + e + ")");
+			}
+		}
+		return new Scalar();
+	}
+
+	/* iterate z = z^2 + c from z = 0 */
+	public static int mandelbrot(double cr, double ci, int maxIter) {
+		return mandelbrot(cr, ci, maxIter, null, 0);
+	}
+
+	/*
+	 * Same saving the z where the iterations stopped in z[i] and z[i + 1],
+	 * both NaN if the point is known to be in the set (nothing to resume)
+	 */
+	public static int mandelbrot(double cr, double ci, int maxIter, double[] z, int i) {
+		if (cardioidCheck && inCardioidOrBulb(cr, ci)) {
+			cardioidHits.increment();
+			iterationsSaved.add(maxIter);
+			if (z != null)
+				z[i] = z[i + 1] = Double.NaN;
+			return maxIter;
+		}
+		return iterate(0.0, 0.0, cr, ci, 0, maxIter, z, i);
+	}
+
+	/* iterate z = z^2 + c from the given z with c fixed by the user */
+	public static int julia(double zr, double zi, double cr, double ci, int maxIter) {
+		return iterate(zr, zi, cr, ci, 0, maxIter, null, 0);
+	}
+
+	public static int julia(double zr, double zi, double cr, double ci, int maxIter, double[] z, int i) {
+		return iterate(zr, zi, cr, ci, 0, maxIter, z, i);
+	}
+
+	/*
+	 * Carry on a point that stopped at count without escaping from the z saved
+	 * in z[i] and z[i + 1] by one of the kernels above, c is the same as then.
+	 * Gives the same count as starting over with the new maxIter, the periodicity
+	 * check aside which does not compare the same points of the orbit.
+	 */
+	public static int resume(double cr, double ci, int count, int maxIter, double[] z, int i) {
+		return iterate(z[i], z[i + 1], cr, ci, count, maxIter, z, i);
+	}
+
+	/* main cardioid or the period 2 bulb on its left */
+	public static boolean inCardioidOrBulb(double cr, double ci) {
+		double ci2 = ci * ci;
+
+		double xr = cr - 0.25;
+		double q = xr * xr + ci2;
+		if (q * (q + xr) <= 0.25 * ci2)
+			return true;
+
+		double xb = cr + 1.0;
+		return xb * xb + ci2 <= 0.0625;
+	}
+
+	/* from z after count iterations, the z reached is saved in z[i] and z[i + 1] if z is not null */
+	private static int iterate(double zr, double zi, double cr, double ci, int count, int maxIter,
+							   double[] z, int i) {
+		if (!periodicityCheck)
+			return iterateFull(zr, zi, cr, ci, count, maxIter, z, i);
+
+		double zr2 = zr * zr;
+		double zi2 = zi * zi;
+
+		// saved point of the orbit and how long until it moves
+		double sr = zr, si = zi;
+		int steps = 0, limit = 2;
+
+		while (zr2 + zi2 < BAILOUT_SQUARED && count < maxIter) {
+			zi = 2.0 * zr * zi + ci;
+			zr = zr2 - zi2 + cr;
+			zr2 = zr * zr;
+			zi2 = zi * zi;
+			count++;
+
+			if (Math.abs(zr - sr) < PERIOD_EPSILON && Math.abs(zi - si) < PERIOD_EPSILON) {
+				periodicHits.increment();
+				iterationsSaved.add(maxIter - count);
+				if (z != null)
+					z[i] = z[i + 1] = Double.NaN;
+				return maxIter;
+			}
+
+			if (++steps == limit) {
+				steps = 0;
+				limit <<= 1;
+				sr = zr;
+				si = zi;
+			}
+		}
+
+		if (z != null) {
+			z[i] = zr;
+			z[i + 1] = zi;
+		}
+		return count;
+	}
+
+	private static int iterateFull(double zr, double zi, double cr, double ci, int count, int maxIter,
+								   double[] z, int i) {
+		double zr2 = zr * zr;
+		double zi2 = zi * zi;
+
+		while (zr2 + zi2 < BAILOUT_SQUARED && count < maxIter) {
+			// (a+ib)^2 = a^2 - b^2 + 2abi
+			zi = 2.0 * zr * zi + ci;
+			zr = zr2 - zi2 + cr;
+			zr2 = zr * zr;
+			zi2 = zi * zi;
+			count++;
+		}
+
+		if (z != null) {
+			z[i] = zr;
+			z[i + 1] = zi;
+		}
+		return count;
+	}
+
+	/* one point at a time, the same as calling mandelbrot() and julia() */
+	private static class Scalar implements RowKernel {
+
+		@Override
+		public void mandelbrot(double[] re, double im, int n, int maxIter, int[] out, double[] z) {
+			for (int i = 0; i < n; i++)
+				out[i] = EscapeTime.mandelbrot(re[i], im, maxIter, z, 2 * i);
+		}
+
+		@Override
+		public void julia(double[] re, double im, int n, double cr, double ci, int maxIter, int[] out, double[] z) {
+			for (int i = 0; i < n; i++)
+				out[i] = EscapeTime.julia(re[i], im, cr, ci, maxIter, z, 2 * i);
+		}
+
+		@Override
+		public String getName() {
+			return "scalar";
+		}
+	}
+
+	public static void setCardioidCheck(boolean enabled) {
+		cardioidCheck = enabled;
+	}
+
+	public static boolean isCardioidCheck() {
+		return cardioidCheck;
+	}
+
+	public static void setPeriodicityCheck(boolean enabled) {
+		periodicityCheck = enabled;
+	}
+
+	public static boolean isPeriodicityCheck() {
+		return periodicityCheck;
+	}
+
+	/* for the row kernels taking the same shortcuts */
+	public static void countShortcuts(int cardioid, int periodic, long saved) {
+		cardioidHits.add(cardioid);
+		periodicHits.add(periodic);
+		iterationsSaved.add(saved);
+	}
+
+	public static long getCardioidHits() {
+		return cardioidHits.sum();
+	}
+
+	public static long getPeriodicHits() {
+		return periodicHits.sum();
+	}
+
+	public static long getIterationsSaved() {
+		return iterationsSaved.sum();
+	}
+
+	public static void resetCounters() {
+		cardioidHits.reset();
+		periodicHits.reset();
+		iterationsSaved.reset();
+	}
+}
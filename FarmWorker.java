@@ -0,0 +1,356 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+
+public class FarmWorker {
+
+	/*
+	 * Worker process of a RenderFarm, computes the tiles it is sent with
+	 * its own threads and sends the counts back as soon as each is done.
+	 * Any number of coordinators can be connected at once, they share the threads.
+	 *
+	 * java FarmWorker [-bind address] [-port n] [-threads n]
+	 *   -bind address  address to listen on (default 127.0.0.1, only this machine),
+	 *                  0.0.0.0 for any; the coordinators are not authenticated
+	 *   -port n        port to listen on (default 7077)
+	 *   -threads n     number of threads (default one per core)
+	 *
+	 * java FarmWorker -scaling n [-threads n] [-size WxH] [-iter n]
+	 *   starts 1 to n workers on this machine, renders the same frame through
+	 *   each farm and prints the throughput, to see how it scales
+	 */
+
+	static final int DEFAULT_PORT = 7077;
+	static final String DEFAULT_BIND = "127.0.0.1";
+	/* printed once listening, the scaling benchmark waits for it */
+	private static final String READY = "Farm worker listening on port ";
+
+	private final int threads;
+	private final ExecutorService pool;
+
+	/* tiles of a connection, in the order they came */
+	private class Connection implements Runnable {
+
+		private final Socket socket;
+		private final DataOutputStream out;
+		private final Map<Integer, RenderFarm.Frame> frames = new LinkedHashMap<Integer, RenderFarm.Frame>();
+		/* tiles not started yet, guarded by this */
+		private final Map<Long, Boolean> waiting = new HashMap<Long, Boolean>();
+
+		Connection(Socket socket) throws IOException {
+			this.socket = socket;
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+		}
+
+		@Override
+		public void run() {
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+				if (in.readInt() != RenderFarm.MAGIC || in.readInt() != RenderFarm.VERSION)
+					throw new IOException("not a render farm of this version");
+				synchronized (out) {
+					out.writeInt(RenderFarm.MAGIC);
+					out.writeInt(RenderFarm.VERSION);
+					out.writeInt(threads);
+					out.flush();
+				}
+
+				while (true)
+					read(in);
+			} catch (EOFException e) {
+				// the coordinator is done
+			} catch (IOException | NumberFormatException e) {
+				System.err.println("Connection from " + socket.getRemoteSocketAddress() + " closed: " + e.getMessage());
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// already closed
+				}
+			}
+		}
+
+		private void read(DataInputStream in) throws IOException {
+			byte type = in.readByte();
+			switch (type) {
+			case RenderFarm.FRAME:
+				// forgotten the same way as the coordinator does
+				int id = in.readInt();
+				frames.put(id, RenderFarm.Frame.read(in));
+				if (frames.size() > RenderFarm.FRAMES_KEPT)
+					frames.remove(frames.keySet().iterator().next());
+				break;
+
+			case RenderFarm.BATCH:
+				RenderFarm.Frame frame = frames.get(in.readInt());
+				int count = in.readInt();
+				for (int i = 0; i < count; i++) {
+					long tile = in.readLong();
+					int x = in.readInt(), y = in.readInt(), w = in.readInt(), h = in.readInt();
+					if (frame == null)
+						throw new IOException("tiles of a frame never sent");
+					if (w <= 0 || h <= 0 || x < 0 || y < 0 || x + w > frame.width || y + h > frame.height)
+						throw new IOException("tile out of its frame");
+					if (w > RenderEngine.TILE_SIZE || h > RenderEngine.TILE_SIZE)
+						throw new IOException("tile larger than " + RenderEngine.TILE_SIZE);
+					synchronized (this) {
+						waiting.put(tile, Boolean.TRUE);
+					}
+					pool.execute(task(frame, tile, x, y, w, h));
+				}
+				break;
+
+			case RenderFarm.CANCEL:
+				long tile = in.readLong();
+				synchronized (this) {
+					waiting.remove(tile);
+				}
+				break;
+
+			default:
+				throw new IOException("unknown message " + type);
+			}
+		}
+
+		private Runnable task(final RenderFarm.Frame frame, final long tile, final int x, final int y,
+							  final int w, final int h) {
+			return new Runnable() {
+
+				@Override
+				public void run() {
+					synchronized (Connection.this) {
+						if (waiting.remove(tile) == null)
+							return; // cancelled
+					}
+					if (socket.isClosed())
+						return;
+
+					byte[] data;
+					String failure = null;
+					try {
+						int[] counts = new int[w * h];
+						frame.computeTile(x, y, w, h, counts);
+						data = RenderFarm.encode(deflater.get(), counts, w, h);
+					} catch (RuntimeException e) {
+						data = null;
+						failure = e.toString();
+					}
+
+					try {
+						synchronized (out) {
+							if (data != null) {
+								out.writeByte(RenderFarm.RESULT);
+								out.writeLong(tile);
+								out.writeInt(data.length);
+								out.write(data);
+							} else {
+								out.writeByte(RenderFarm.FAILED);
+								out.writeLong(tile);
+								out.writeUTF(failure);
+							}
+							out.flush();
+						}
+					} catch (IOException e) {
+						// the reading thread sees it too and closes the connection
+					}
+				}
+			};
+		}
+	}
+
+	/* one deflater per thread of the pool */
+	private final ThreadLocal<Deflater> deflater = new ThreadLocal<Deflater>() {
+
+		@Override
+		protected Deflater initialValue() {
+			return new Deflater(Deflater.BEST_SPEED);
+		}
+	};
+
+	public FarmWorker(int threads) {
+		this.threads = threads;
+		pool = Executors.newFixedThreadPool(threads);
+	}
+
+	/* accept coordinators on the address given until the process is stopped */
+	public void serve(String bind, int port) throws IOException {
+		try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getByName(bind))) {
+			System.out.println(READY + server.getLocalPort() + ", " + threads + " threads, on " + bind);
+			System.out.flush();
+			while (true) {
+				Socket socket = server.accept();
+				socket.setTcpNoDelay(true);
+				Thread thread = new Thread(new Connection(socket), "farm-" + socket.getRemoteSocketAddress());
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		String bind = DEFAULT_BIND;
+		int port = DEFAULT_PORT;
+		int threads = RenderEngine.defaultParallelism();
+		int scaling = 0;
+		int width = 1920, height = 1080, maxIter = 5000;
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (i + 1 >= args.length) {
+				usage("Missing value for " + option);
+				return;
+			}
+			String value = args[++i];
+			try {
+				switch (option) {
+				case "-bind":
+					bind = value;
+					break;
+				case "-port":
+					port = Integer.parseInt(value);
+					break;
+				case "-threads":
+					threads = Integer.parseInt(value);
+					break;
+				case "-scaling":
+					scaling = Integer.parseInt(value);
+					break;
+				case "-size":
+					String[] size = value.toLowerCase().split("x");
+					width = Integer.parseInt(size[0]);
+					height = Integer.parseInt(size[1]);
+					break;
+				case "-iter":
+					maxIter = Integer.parseInt(value);
+					break;
+				default:
+					usage("Unknown option " + option);
+					return;
+				}
+			} catch (NumberFormatException | IndexOutOfBoundsException e) {
+				usage("Incorrect value for " + option + ": " + value);
+				return;
+			}
+		}
+		if (threads <= 0 || width <= 0 || height <= 0 || maxIter <= 0) {
+			usage("Sizes, iterations and threads have to be positive");
+			return;
+		}
+
+		try {
+			if (scaling > 0)
+				scaling(scaling, threads, width, height, maxIter);
+			else
+				new FarmWorker(threads).serve(bind, port);
+		} catch (IOException e) {
+			System.err.println("Farm worker stopped: " + e.getMessage());
+			System.exit(1);
+		} catch (InterruptedException e) {
+			System.exit(1);
+		}
+	}
+
+	private static void usage(String message) {
+		System.err.println(message);
+		System.err.println("usage: java FarmWorker [-bind address] [-port n] [-threads n]");
+		System.err.println("       java FarmWorker -scaling n [-threads n] [-size WxH] [-iter n]");
+		System.exit(1);
+	}
+
+	/*
+	 * Throughput of the same frame with 1 to n local worker processes of the given
+	 * threads each, started with the java, class path and options of this one
+	 */
+	private static void scaling(int n, int threads, int width, int height, int maxIter)
+			throws IOException, InterruptedException {
+		List<Process> processes = new ArrayList<Process>();
+		List<String> addresses = new ArrayList<String>();
+		try {
+			for (int i = 0; i < n; i++) {
+				List<String> command = new ArrayList<String>();
+				command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+				command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+				command.add("-cp");
+				command.add(System.getProperty("java.class.path"));
+				command.add("FarmWorker");
+				command.add("-port");
+				command.add("0");
+				command.add("-threads");
+				command.add(String.valueOf(threads));
+				Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+				processes.add(process);
+
+				// the port it was given
+				BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+				String line = in.readLine();
+				if (line == null || !line.startsWith(READY))
+					throw new IOException("worker " + i + " did not start");
+				addresses.add("localhost:" + line.substring(READY.length()).split(",")[0]);
+			}
+
+			// a view with some inside and a lot of boundary, the same work every time
+			Viewport view = new Viewport(new BigDecimal("-0.7436438870"), new BigDecimal("0.1318259042"),
+										 3e-4, 3e-4 * height / width);
+			RenderFarm.Frame frame = new RenderFarm.Frame(FractalRenderer.TYPE_MANDELBROT, view, width, height,
+														  maxIter, 0.0, 0.0);
+			System.out.printf("%dx%d, %d iterations max, %d threads per worker%n", width, height, maxIter, threads);
+
+			double first = 0;
+			for (int workers = 1; workers <= n; workers++) {
+				RenderFarm farm = new RenderFarm(addresses.subList(0, workers));
+				try {
+					render(farm, frame); // warm up
+					long start = System.nanoTime();
+					render(farm, frame);
+					double seconds = (System.nanoTime() - start) / 1e9;
+					double rate = (double) width * height / seconds / 1e6;
+					if (workers == 1)
+						first = rate;
+					System.out.printf("%d worker%s: %.3f s, %.2f Mpixels/s, x%.2f%n", workers,
+									  (workers == 1) ? " " : "s", seconds, rate, rate / first);
+				} finally {
+					farm.close();
+				}
+			}
+		} finally {
+			for (Process process : processes)
+				process.destroy();
+		}
+	}
+
+	/* every tile of the frame through the farm */
+	private static void render(RenderFarm farm, RenderFarm.Frame frame) throws IOException, InterruptedException {
+		int size = RenderEngine.TILE_SIZE;
+		List<RenderFarm.Tile> tiles = new ArrayList<RenderFarm.Tile>();
+		for (int y = 0; y < frame.height; y += size)
+			for (int x = 0; x < frame.width; x += size)
+				tiles.add(farm.submit(frame, x, y, Math.min(size, frame.width - x), Math.min(size, frame.height - y)));
+
+		for (RenderFarm.Tile tile : tiles) {
+			tile.await();
+			if (tile.getCounts() == null)
+				throw new IOException("the farm failed a tile");
+		}
+	}
+}
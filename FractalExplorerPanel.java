@@ -2,29 +2,70 @@ import java.awt.*;
 import javax.swing.*;
 import java.awt.event.*;
 import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
 import java.lang.Thread;
 
 
 public class FractalExplorerPanel extends JPanel implements MouseListener, MouseMotionListener,
-															Runnable {
-	public static final int TYPE_MANDELBROT = 1;
-	public static final int TYPE_JULIA = 2;
+															Runnable, FractalRenderer.Listener {
+	public static final int TYPE_MANDELBROT = FractalRenderer.TYPE_MANDELBROT;
+	public static final int TYPE_JULIA = FractalRenderer.TYPE_JULIA;
 	
 	public int fractal; /* Type of fractal */
 	
+	/*
+	 * While the julia point follows the pointer only a preview is drawn,
+	 * one pixel in previewStep x previewStep, the step being adapted so a
+	 * preview takes about PREVIEW_MILLIS. The full frame is drawn once
+	 * the point has not moved for REST_MILLIS.
+	 */
+	private static final long PREVIEW_MILLIS = 20;
+	private static final long REST_MILLIS = 120;
+	private static final int MAX_PREVIEW_STEP = 16;
+	
 	private MainFrame mainFrame;
 	
+	/* draws the frames, the only thread giving the renderer its view and iterations */
 	private Thread thread;
 	
-	/* intial values for mandelbrot */
-	private double Xmin = -2.0;
-	private double Xmax = 2.0;
-	private double Ymin = -1.6;
-	private double Ymax = 1.6;
-	private int maxIter = 190;
+	/* does the actual rendering, the panel only displays its image */
+	private FractalRenderer renderer;
+	
+	/*
+	 * What the next frame is to show, guarded by this. Every change is a new
+	 * generation of the renderer which abandons the frame being drawn,
+	 * the render thread always draws the latest one.
+	 */
+	private Viewport view;
+	private int maxIter;
+	private long generation = 0; // of the latest change
+	private long rendered = 0; // generation of the last frame drawn to the end
+	private boolean recolorAsked = false;
+	
+	private int previewStep = 4;
+	private Complex drawnPoint; // julia point given to the renderer
 	
 	private JuliaFrame juliaFrame;
 	
+	/* what the user asks for, only kept with -Dfractal.trace=file */
+	private final InteractionTrace trace;
+	
+	/*
+	 * Told by the render thread how far the frames have got, TraceReplay
+	 * times the actions it plays again on a panel with it
+	 */
+	interface FrameListener {
+		/* part of the frame of the given generation has been drawn */
+		void areaDrawn(long generation);
+		
+		/* the frame of the given generation has been drawn to the end */
+		void frameDone(long generation);
+	}
+	
+	private volatile FrameListener frameListener;
+	/* generation of the frame the render thread is drawing, the callbacks of the one before are all done */
+	private volatile long drawing = 0;
+	
 	private Image image;
 	private Image bufferImage;
 	
@@ -35,15 +76,27 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 	
 	private Double mouseX, mouseY; // in complex form
 	private int draggingX, draggingY; // in pixel form
-	private double percent = 0.0;
+	private int pressX, pressY; // where the drag started, in pixel form
+	private volatile double percent = 0.0;
+	
+	private boolean isSelection, isZoomCancelled = false;
 	
-	private Complex start, end;
-	private boolean isSelection, isDrawn, isZoomCancelled = false;
+	/* numbers of the last frames drawn over the image, -Dfractal.overlay=true to start with them */
+	private volatile boolean showMetrics = Boolean.getBoolean("fractal.overlay");
+	
+	private boolean isPanning = false; // dragging with the right button
+	private int panX, panY; // how far the image has been dragged, in pixel form, only used on the event thread
 	
 	private Complex userSelectedPoint = new Complex(0.0, 0.0);
 	
 	public FractalExplorerPanel(MainFrame mf, int type) {
+		this(mf, type, InteractionTrace.getDefault());
+	}
+	
+	/* recording what the user asks for in the given trace, null for none */
+	FractalExplorerPanel(MainFrame mf, int type, InteractionTrace trace) {
 		mainFrame = mf;
+		this.trace = trace;
 		thread = null;
 		
 		// default to mandelbrot
@@ -56,6 +109,23 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 			break;
 		}
 		
+		// both windows render on the workers shared by the program
+		renderer = new FractalRenderer(fractal, new RenderEngine());
+		renderer.setListener(this);
+		renderer.setTileCache(TileCache.withDefaultSize());
+		renderer.setFarm(RenderFarm.getDefault()); // with -Dfractal.farm=host:port,...
+		view = renderer.getView();
+		maxIter = renderer.getMaxIter();
+		renderer.getEngine().getMetrics().register((fractal == TYPE_JULIA) ? "Julia" : "Mandelbrot");
+		
+		// julia previews go first, its full frames only when the mandelbrot is done
+		if (fractal == TYPE_JULIA)
+			renderer.getEngine().setPriority(RenderScheduler.PRIORITY_BACKGROUND);
+		
+		// the julia constant follows the mouse, its tiles would rarely be used again
+		if (fractal == TYPE_MANDELBROT && renderer.getTileCache() != null)
+			renderer.getTileCache().setStore(TileStore.getDefault());
+		
 		if (fractal == TYPE_JULIA)
 			return;
 
@@ -64,48 +134,125 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 	}
 	
 	public void init() {
-		if (fractal == TYPE_JULIA) {
-			draw();
-			return;
-		}
-		redraw();
+		// the julia panel is drawn again each time its point moves
+		redraw((fractal == TYPE_JULIA) ? InteractionTrace.POINT : InteractionTrace.INIT);
 	}
 	
 	@Override
 	public void run() {
-		while (thread != null) {
-			while (draw() || Thread.interrupted()) {
-				synchronized (this) {
+		while (true) {
+			long job;
+			Viewport v;
+			int iterations;
+			Complex point;
+			
+			synchronized (this) {
+				while (rendered == generation && !recolorAsked) {
 					try {
 						wait();
-					} catch (InterruptedException e) {}
+					} catch (InterruptedException e) {
+						return;
+					}
 				}
+				// a frame takes the colours as they are when it is done
+				recolorAsked = false;
+				job = generation;
+				v = view;
+				iterations = maxIter;
+				point = userSelectedPoint;
+			}
+			
+			if (job == rendered) {
+				renderer.recolor();
+				continue;
+			}
+			drawing = job;
+			
+			// a new julia point is previewed first, only drawn in full once it stops moving
+			if (fractal == TYPE_JULIA && point != null
+				&& (drawnPoint == null || !point.equals(drawnPoint))) {
+				if (!drawPreview(job, v, iterations, point) || !rest(job))
+					continue;
+			}
+			draw(job, v, iterations, point);
+		}
+	}
+	
+	/* @return false if it was cancelled */
+	private boolean drawPreview(long job, Viewport v, int iterations, Complex point) {
+		initImaging();
+		
+		renderer.setView(v);
+		renderer.setMaxIter(iterations);
+		renderer.setJuliaPoint(point.getRe(), point.getIm());
+		drawnPoint = point;
+		
+		long start = System.nanoTime();
+		if (!renderer.renderPreview(job, previewStep))
+			return false;
+		long millis = (System.nanoTime() - start) / 1000000;
+		
+		// halving the step computes four times as many pixels
+		if (millis > PREVIEW_MILLIS && previewStep < MAX_PREVIEW_STEP)
+			previewStep *= 2;
+		else if (millis * 4 < PREVIEW_MILLIS && previewStep > 2)
+			previewStep /= 2;
+		return true;
+	}
+	
+	/* @return true if no other frame was asked for during REST_MILLIS */
+	private synchronized boolean rest(long job) {
+		long end = System.currentTimeMillis() + REST_MILLIS;
+		long left;
+		while (generation == job && (left = end - System.currentTimeMillis()) > 0) {
+			try {
+				wait(left);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt(); // ends the render thread
+				return false;
 			}
 		}
+		return generation == job;
 	}
 	
-	private void redraw() {
-		if (thread != null && thread.isAlive()) {
-			thread.interrupt();
-		} else {
+	/* draw again with the latest values, abandoning the frame being drawn, after the given action */
+	private synchronized void redraw(String action) {
+		generation = renderer.cancel();
+		
+		if (trace != null) {
+			Dimension size = getSize();
+			trace.record(action, fractal, size.width, size.height, maxIter, view,
+						 (fractal == TYPE_JULIA) ? userSelectedPoint : null);
+		}
+		
+		if (thread == null) {
 			thread = new Thread(this);
 			thread.setPriority(Thread.MIN_PRIORITY); // set it to min so it is not obtrusive
 			thread.start();
 		}
+		notifyAll();
 	}
 	
-	private boolean draw() {
-		if (fractal == TYPE_MANDELBROT) {
-			if (isDrawn || thread.isInterrupted())
-				return false;
-		}
-		
+	private void draw(long job, Viewport v, int iterations, Complex point) {
 		initImaging();
-		drawLowDef();
-		drawHighDef();
 		
-		isDrawn = true;
-		return true;
+		renderer.setView(v);
+		renderer.setMaxIter(iterations);
+		if (fractal == TYPE_JULIA && point != null) {
+			renderer.setJuliaPoint(point.getRe(), point.getIm());
+			drawnPoint = point;
+		}
+		
+		// a cancelled frame leaves its finished tiles to the next one
+		if (renderer.render(job)) {
+			percent = 100.0;
+			synchronized (this) {
+				rendered = job;
+			}
+			FrameListener listener = frameListener;
+			if (listener != null)
+				listener.frameDone(job);
+		}
 	}
 	
 	private void initImaging() {
@@ -115,43 +262,42 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 			width = size.width;
 			height = size.height;
 
-			image = createImage(width, height);
+			renderer.setSize(width, height);
+			image = renderer.getImage();
 			graphics = image.getGraphics();
 
-			bufferImage = createImage(width, height);
+			// not createImage(), it has no image to give without a display
+			bufferImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
 			bufferGraphics = bufferImage.getGraphics();
 
 		}
+		
+		// what is on screen is started first
+		renderer.getEngine().setVisibleArea(getVisibleRect());
 	}
 	
-	private void drawLowDef() {
-		// quickly drawing buffer (only draw some of the pixels)
-		for (int x = 0; x < width + 4; x += 8) {
-			for (int y = 0; y < height + 4; y += 8) {
-
-				Color color = getColor( pixel2Complex(x, y) );
-
-				graphics.setColor(color);
-				graphics.fillRect(x - 4, y - 4, 8, 8);
-			}
-			repaint();
-		}
-	}
-	
-	private void drawHighDef() {
+	@Override
+	public void areaRendered(final int x, final int y, final int w, final int h) {
+		percent = renderer.getPercent();
+		FrameListener listener = frameListener;
+		if (listener != null)
+			listener.areaDrawn(drawing);
 		
-		for (int y = 0; y < height; y++) {
-			for (int x = 0; x < width; x++) {
-				
-				Color color = getColor( pixel2Complex(x, y));
-				
-				graphics.setColor(color);
-				graphics.fillRect(x,y, 1,1);
-				
-				percent = Math.ceil(100.0 * (double)y / (double)height);
+		// the pan belongs to the event thread, like the mouse and paintComponent
+		SwingUtilities.invokeLater(new Runnable() {
+			
+			@Override
+			public void run() {
+				// the image is now drawn at the panned view
+				if (!isPanning && (panX != 0 || panY != 0)) {
+					panX = 0;
+					panY = 0;
+					repaint();
+					return;
+				}
+				repaint(x, y, w, h);
 			}
-			repaint();
-		}
+		});
 	}
 	
 	// update fields
@@ -165,48 +311,46 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 			if (juliaFrame != null)
 				juliaFrame.updateMaxIter(iterations);
 			
-			// interrupt current thread and change values
-			while (thread.isInterrupted() || percent != 100) {
-				synchronized (this) {
-					thread.interrupt();
-				}
-			}
+			// the fields only show doubles, keep the precise view if they did not change
+			Viewport v = getView();
+			if (!v.hasBounds(minR, maxR, minI, maxI))
+				v = Viewport.fromBounds(minR, maxR, minI, maxI);
 			
-			Xmin = minR;
-			Xmax = maxR;
-			Ymin = minI;
-			Ymax = maxI;
-			maxIter = iterations;
-
-			isDrawn = false;
+			updateView(v, iterations, InteractionTrace.VALUES);
+		}
+		
+		/* the frame being drawn is abandoned, nothing waits for it */
+		private void updateView(Viewport v, int iterations, String action) {
 			
-			while (percent != 100) {
-				try {
-					wait();
-				} catch (InterruptedException e) {}
+			synchronized (this) {
+				// the fields echo the view back when they are updated
+				if (v == view && iterations == maxIter)
+					return;
+				view = v;
+				maxIter = iterations;
 			}
 			// call this not to have a squeezed image
-			equalizeAxis();
+			equalizeAxis(action);
 		}
 		
 		/* make the ratio of the axis equal to the ratio of the size of the window */
 		public void equalizeAxis() {
+			equalizeAxis(InteractionTrace.EQUALIZE);
+		}
+		
+		private void equalizeAxis(String action) {
 			
 			if (fractal == TYPE_JULIA)
 				return;
 			
 			Dimension size = getSize();
 			
-			// normalize values
-			Ymin = Math.min(Ymin, Ymax);
-			Ymax = Math.max(Ymin, Ymax);
-			Xmin = Math.min(Xmin, Xmax);
-			Xmax = Math.max(Xmin, Xmax);
-			
 			double ratio = size.width / size.height;
 			
-			double complexWidth = Xmax - Xmin;
-			double complexHeight = Ymax - Ymin;
+			// the view keeps its bounds in order
+			Viewport view = getView();
+			double complexWidth = view.getWidth();
+			double complexHeight = view.getHeight();
 			
 			double complexRatio = complexWidth / complexHeight;
 			double eqComplexHeight = complexWidth / ratio;
@@ -214,20 +358,19 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 			
 			// always add and not remove area
 			// let user view all selection
+			// the centre does not move so resize around it
 			if (ratio > complexRatio) {
-				double widthToAdd = (eqComplexWidth - complexWidth) / 2;
-				Xmin -= widthToAdd;
-				Xmax += widthToAdd;
+				if (eqComplexWidth != complexWidth)
+					setView(view.resize(eqComplexWidth, complexHeight));
 			}
 			else {
-				double heightToAdd = (eqComplexHeight - complexHeight) / 2;
-				Ymin -= heightToAdd;
-				Ymax += heightToAdd;
+				if (eqComplexHeight != complexHeight)
+					setView(view.resize(complexWidth, eqComplexHeight));
 			}
 			
-			mainFrame.updateValues(Xmin, Xmax, Ymin, Ymax, maxIter);
+			updateFields();
 			
-			redraw();
+			redraw(action);
 		}
 		
 		/* where a and b are both extremities
@@ -235,21 +378,40 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 		 */
 		public void zoom(Complex a, Complex b) {
 			
-			// dont zoom until finished drawing
-			if (thread.isInterrupted() || percent != 100)
-				return;
-			
 			double minX = Math.min(a.getRe(), b.getRe());
 			double maxX = Math.max(a.getRe(), b.getRe());
 			double minY = Math.min(a.getIm(), b.getIm());
 			double maxY = Math.max(a.getIm(), b.getIm());
 			
-			isDrawn = false;
-			
 			// update instance variables and call paint
-			updateValues(minX, maxX, minY, maxY, maxIter);
+			updateValues(minX, maxX, minY, maxY, getMaxIter());
 			// update fields 
-			mainFrame.updateValues(Xmin, Xmax, Ymin, Ymax, maxIter);
+			updateFields();
+		}
+		
+		/* zoom on the rectangle between two pixels,
+		 * unlike zoom(Complex, Complex) this keeps all the precision of the view
+		 */
+		public void zoom(int x0, int y0, int x1, int y1) {
+			
+			// the frame being drawn is abandoned
+			updateView(getView().zoom(x0, y0, x1, y1, width, height), getMaxIter(), InteractionTrace.ZOOM);
+			updateFields();
+		}
+		
+		/* move the view so the image follows a drag of (dx, dy) pixels,
+		 * what is still visible is kept and only the uncovered strips are computed
+		 */
+		public void pan(int dx, int dy) {
+			
+			updateView(getView().pan(dx, dy, width, height), getMaxIter(), InteractionTrace.PAN);
+			updateFields();
+		}
+		
+		private void updateFields() {
+			Viewport view = getView();
+			mainFrame.updateValues(view.getXmin(), view.getXmax(), view.getYmin(), view.getYmax(),
+								   getMaxIter());
 		}
 		
 		@Override
@@ -270,7 +432,12 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 			
 			bufferGraphics.drawImage(image, 0, 0, null);
 			
-			g.drawImage(bufferImage, 0, 0, null);
+			// while panning the image follows the pointer
+			if (panX != 0 || panY != 0) {
+				g.setColor(Color.black);
+				g.fillRect(0, 0, size.width, size.height);
+			}
+			g.drawImage(bufferImage, panX, panY, null);
 			
 			// draw user selected point
 			if (userSelectedPoint != null) {
@@ -279,16 +446,19 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 				g2.drawString("Re:" + userSelectedPoint.getRe() + "  Im:" + userSelectedPoint.getIm(), 2, 32);
 			}
 			
+			if (showMetrics)
+				drawMetrics(g2, size);
+			
 			// exit if this is julia frame
 			if (fractal == TYPE_JULIA)
 				return;
 			
 			/* draw zoom box */
 			if (isSelection && !isZoomCancelled) {
-				int minX = Math.min(draggingX, (int)complex2Pixel(start).getX());
-				int maxX = Math.max(draggingX, (int)complex2Pixel(start).getX());
-				int minY = Math.min(draggingY, (int)complex2Pixel(start).getY());
-				int maxY = Math.max(draggingY, (int)complex2Pixel(start).getY());
+				int minX = Math.min(draggingX, pressX);
+				int maxX = Math.max(draggingX, pressX);
+				int minY = Math.min(draggingY, pressY);
+				int maxY = Math.max(draggingY, pressY);
 				
 				// do draw
 				g.setColor(Color.yellow);
@@ -306,71 +476,51 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 					g2.drawString("Re:" + mouseX + "  Im:" + mouseY, 2, size.height - 5);
 			}
 			
-			/* draw percent */
+			/* draw percent and the precision used */
 			g2.setColor(Color.white);
 			g2.drawString(percent + "%", size.width - 100, 15);
+			g2.drawString(renderer.getPrecisionTier().getLabel(), size.width - 100, 32);
 		}
 		
-		private Color getColor(Complex c) {
-			int iter = (fractal == TYPE_MANDELBROT) ? mandelbrot(new Complex(0.0, 0.0), c) : julia(c);
-			return new Color(iter | (iter << 21)); // get RGB value depending on iteration count
+		/* the numbers of the engine, under the percent and precision */
+		private void drawMetrics(Graphics2D g2, Dimension size) {
+			String[] lines = renderer.getEngine().getMetrics().summary();
+			FontMetrics fm = g2.getFontMetrics();
+			int w = 0;
+			for (String line : lines)
+				w = Math.max(w, fm.stringWidth(line));
+			
+			int x = size.width - w - 6;
+			int y = 40;
+			g2.setColor(new Color(0, 0, 0, 160));
+			g2.fillRect(x - 4, y, w + 8, lines.length * fm.getHeight() + 6);
+			g2.setColor(Color.white);
+			for (int i = 0; i < lines.length; i++)
+				g2.drawString(lines[i], x, y + (i + 1) * fm.getHeight());
 		}
 		
-		/* compute Mandelbrot escape point for given point */
-		private int mandelbrot(Complex z, Complex c) {
-			int count = 0;
-			
-			while (z.getModulus() < 2.0 && count < maxIter) {
-				z = z.square().add(c);
-				count++;
-			}
-			
-			return count;
+		public void setShowMetrics(boolean show) {
+			showMetrics = show;
+			if (juliaFrame != null)
+				juliaFrame.setShowMetrics(show);
+			repaint();
 		}
 		
-		private int julia(Complex z) {
-			
-			int count = 0;
-			Complex c = userSelectedPoint;
-			
-			while (z.getModulus() < 2.0 && count < maxIter) {
-				z = z.square().add(c);
-				count++;
-			}
-			
-			return count;
+		public boolean isShowMetrics() {
+			return showMetrics;
 		}
 		
 		public Point2D.Double complex2Pixel(Complex c) {
-			
-			//Dimension size = getSize();
-			// use current saved size so that
-			// if user resizes window while
-			// rendering, the image is not split
-			Dimension size = new Dimension(width, height);
-			
-			double x = c.getRe();
-			double y = c.getIm();
-			
-			double xp = size.width / (Xmax - Xmin) * (x - Xmin);
-			double yp = -(size.height) / (Ymax - Ymin) * (y - Ymax);
-			
-			return new Point2D.Double(xp, yp);
+			return renderer.complex2Pixel(c);
 		}
 		
 		public Complex pixel2Complex(double x, double y) {
-			
-			//Dimension size = getSize();
-			Dimension size = new Dimension(width, height);
-			
-			double re = (x / size.width) * (Xmax - Xmin) + Xmin;
-			double im = (y / -(size.height)) * (Ymax - Ymin) + Ymax;
-			
-			return new Complex(re, im);
+			return renderer.pixel2Complex(x, y);
 		}
 		
 		
-		public void setUserSelectedPoint(Complex userSelectedPoint) {
+		/* the julia set of the point is drawn by init() */
+		public synchronized void setUserSelectedPoint(Complex userSelectedPoint) {
 			this.userSelectedPoint = userSelectedPoint;
 		}
 		
@@ -378,6 +528,12 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 			if (juliaFrame == null) {
 				try {
 					juliaFrame = new JuliaFrame();
+					juliaFrame.setShowMetrics(showMetrics);
+					// coloured like this panel, the colours cycled as far
+					juliaFrame.setPalette(renderer.getPalette());
+					juliaFrame.setSmooth(renderer.isSmooth());
+					juliaFrame.setEqualize(renderer.isEqualize());
+					juliaFrame.cyclePalette(renderer.getPaletteOffset());
 				} catch (Exception err) {
 					return;
 				}
@@ -401,11 +557,64 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 		}
 		
 		public void setMaxIter(int iter) {
-			maxIter = iter;
+			synchronized (this) {
+				// the main frame echoes it with every change of view
+				if (iter == maxIter)
+					return;
+				maxIter = iter;
+			}
+			redraw(InteractionTrace.ITERATIONS);
+		}
+
+		/*
+		 * the colouring changes apply to the image at once, the counts are not computed again;
+		 * the julia frame is coloured the same way
+		 */
+		public void setPalette(Palette palette) {
+			renderer.setPalette(palette);
+			recolor();
+			if (juliaFrame != null)
+				juliaFrame.setPalette(palette);
+		}
+
+		public void setSmooth(boolean smooth) {
+			renderer.setSmooth(smooth);
+			recolor();
+			if (juliaFrame != null)
+				juliaFrame.setSmooth(smooth);
+		}
+
+		public void setEqualize(boolean equalize) {
+			renderer.setEqualize(equalize);
+			recolor();
+			if (juliaFrame != null)
+				juliaFrame.setEqualize(equalize);
+		}
+
+		/* move the colours along by step counts */
+		public void cyclePalette(int step) {
+			renderer.setPaletteOffset(renderer.getPaletteOffset() + step);
+			recolor();
+			if (juliaFrame != null)
+				juliaFrame.cyclePalette(step);
+		}
+
+		/* done by the render thread, after the frame being drawn if there is one */
+		private synchronized void recolor() {
+			recolorAsked = true;
+			if (thread != null)
+				notifyAll();
 		}
 
 		@Override
 		public void mouseDragged(MouseEvent e) {
+			if (isPanning) {
+				panX = e.getX() - pressX;
+				panY = e.getY() - pressY;
+				repaint();
+				return;
+			}
+			
 			// zoom
 			draggingX = e.getX();
 			draggingY = e.getY();
@@ -451,7 +660,11 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 			// store the starting point of the drag
 			// so we can compute zoom area to zoom when 
 			// mouse released
-			start = new Complex(mouseX, mouseY);
+			pressX = e.getX();
+			pressY = e.getY();
+			
+			// the right button moves the view instead
+			isPanning = SwingUtilities.isRightMouseButton(e);
 		}
 
 		@Override
@@ -459,12 +672,15 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 			int x = e.getX();
 			int y = e.getY();
 			
-			// end point of drag 
-			end = pixel2Complex(x, y);
-			
 			// zoom if the mouse has only been released after a drag
-			if (isSelection && !start.equals(end) && !isZoomCancelled)
-				zoom(start, end);
+			if (isSelection && (x != pressX || y != pressY) && !isZoomCancelled)
+				zoom(pressX, pressY, x, y);
+			
+			if (isPanning) {
+				isPanning = false;
+				if (x != pressX || y != pressY)
+					pan(x - pressX, y - pressY);
+			}
 			
 			// update values 
 			isSelection = false;
@@ -477,9 +693,48 @@ public class FractalExplorerPanel extends JPanel implements MouseListener, Mouse
 		@Override
 		public void mouseExited(MouseEvent e) {}
 
-		public int getMaxIter() {
+		public PrecisionTier getPrecisionTier() {
+			return renderer.getPrecisionTier();
+		}
+		
+		public synchronized int getMaxIter() {
 			return maxIter;
 		}
+		
+		/* the view asked for, the renderer gets it when it starts drawing it */
+		public synchronized Viewport getView() {
+			return view;
+		}
+		
+		private void setView(Viewport v) {
+			synchronized (this) {
+				view = v;
+			}
+		}
+		
+		public FractalRenderer getRenderer() {
+			return renderer;
+		}
+		
+		void setFrameListener(FrameListener listener) {
+			frameListener = listener;
+		}
+		
+		/*
+		 * Draw what an action of a trace asked for, the way the panel drew it then
+		 * @return the generation of its frame
+		 */
+		long replay(InteractionTrace.Action action) {
+			setSize(action.width, action.height);
+			synchronized (this) {
+				view = action.view;
+				maxIter = action.maxIter;
+				if (fractal == TYPE_JULIA)
+					userSelectedPoint = new Complex(action.juliaRe, action.juliaIm);
+				redraw(action.action);
+				return generation;
+			}
+		}
 
 		public Image getImage() {
 			return image;
@@ -0,0 +1,1328 @@
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+
+public class FractalRenderer implements RenderEngine.TilePainter {
+
+	/*
+	 * Renders a Mandelbrot or Julia fractal into a BufferedImage.
+	 * Holds everything about a frame (view, iterations, buffers) but
+	 * nothing from Swing, so it is used by the explorer panels as well
+	 * as headless from the command line.
+	 */
+
+	public static final int TYPE_MANDELBROT = 1;
+	public static final int TYPE_JULIA = 2;
+
+	private static final int TILE_SIZE = RenderEngine.TILE_SIZE;
+
+	/* size of the blocks drawn by the low definition pass */
+	private static final int LOW_DEF_STEP = 8;
+	/* rectangles this small are computed pixel by pixel instead of subdivided */
+	private static final int MIN_SUBDIVIDE = 6;
+
+	/* in iterBuffer, a point that had not escaped at the last maxIter and is resumed from zState */
+	private static final int RESUME = -2;
+	/* in iterBuffer, a point copied from its mirror image once the tile of that one is done */
+	private static final int MIRROR = -3;
+	/* in zState, nothing saved for this point */
+	private static final double NO_Z = Double.POSITIVE_INFINITY;
+	/* how often a tile waiting for the farm checks if the frame was cancelled */
+	private static final long FARM_POLL_MILLIS = 20;
+	/* tiles the farm is given ahead of the workers here, per tile its workers can hold */
+	private static final int FARM_AHEAD = 2;
+
+	public interface Listener {
+		/* part of the image has changed and can be repainted */
+		void areaRendered(int x, int y, int w, int h);
+	}
+
+	private final int fractal;
+	private final RenderEngine engine;
+	private Listener listener;
+
+	/* intial values for mandelbrot */
+	private Viewport view = Viewport.fromBounds(-2.0, 2.0, -1.6, 1.6);
+	private int maxIter = 190;
+
+	/* constant of the julia set */
+	private double juliaRe, juliaIm;
+
+	/* arithmetic used for the current frame, deepKernel is only set past plain doubles */
+	private PrecisionTier tier = PrecisionTier.DOUBLE;
+	private DeltaKernel deepKernel;
+
+	/*
+	 * pixels lie on a grid anchored at the origin of the complex plane,
+	 * pixel x is at (originX + x) * spacingX, so tiles of that grid can be
+	 * cached and found again from another view at the same level of zoom
+	 */
+	private double spacingX, spacingY;
+	private double originX, originY; // whole numbers
+	private TileCache cache;
+
+	private BufferedImage image;
+	private int[] pixels; // backing array of image, one RGB int per pixel
+	private int[] iterBuffer; // iteration count per pixel, -1 when not computed yet
+	/* z where each pixel stopped (2 doubles per pixel), only with plain doubles */
+	private double[] zState;
+	private int resumeFrom; // maxIter the RESUME points stopped at
+	private int width, height;
+
+	/* view of the frame in the image, stretched over the next one while it renders */
+	private Viewport frameView;
+	private int[] previous; // copy of the pixels of that frame
+	/* what else the counts of that frame depend on, to know if they can be kept */
+	private PrecisionTier frameTier;
+	private int frameMaxIter;
+	private double frameJuliaRe, frameJuliaIm;
+	private double frameSpacingX, frameSpacingY, frameOriginX, frameOriginY;
+
+	/*
+	 * Colouring, separate from the iterations: the counts are turned into
+	 * colours through lut which is rebuilt when any of these change,
+	 * so changing them only needs recolor()
+	 */
+	private volatile Palette palette = Palette.CLASSIC;
+	private volatile int paletteOffset = 0; // in counts, moved to cycle the colours
+	private volatile boolean smooth = false; // blend between counts from where z escaped
+	private volatile boolean equalize = false; // spread the colours by how many pixels have each count
+	private volatile int[] lut; // colour of counts 0 to maxIter - 1, the last one is for the inside
+	private volatile boolean colorsChanged = false; // since lut was built
+	private float[] fractions; // fractional part of the count of each pixel for smooth colouring
+	private boolean fractionsDone;
+	private float[] cdf; // share of escaped pixels below each count, for equalization
+	private boolean cdfDone;
+
+	/* fill rectangles with a uniform border without computing them (Mariani-Silver) */
+	private boolean subdivide = !Boolean.getBoolean("fractal.nosubdivide");
+
+	/*
+	 * only compute one half of the parts of the frame that are symmetric:
+	 * the mandelbrot set is symmetric about the real axis and a julia set
+	 * about the origin, the pixel grid being anchored at the origin their
+	 * mirror images are exactly on it
+	 */
+	private boolean symmetry = !Boolean.getBoolean("fractal.nosymmetry");
+	private boolean symmetric; // used by the frame being rendered
+
+	/*
+	 * tiles computed by the processes of a render farm, the workers here only
+	 * wait for them and colour them; they have no z saved so smooth colouring
+	 * iterates their escaped pixels again and they are computed again rather
+	 * than resumed; a frame gives the farm only the tiles a little ahead of
+	 * the workers here, one more each time one of them starts a tile, so it
+	 * never waits on a full farm queue and large frames start at once
+	 */
+	private volatile RenderFarm farm;
+	private final Object farmLock = new Object(); // guards the farm state of the frame being rendered
+	private Map<Integer, RenderFarm.Tile> farmTiles; // of the frame being rendered, by their top left pixel
+	private Set<Integer> farmTaken; // tiles a worker here has started, never given to the farm after
+	private RenderFarm frameFarm; // the farm of the frame being rendered
+	private RenderFarm.Frame farmFrame;
+	private int[] farmOrder;
+	private int farmNext, farmOffsetX, farmOffsetY; // next tile of the order to give the farm
+
+	private volatile double percent = 0.0;
+	private volatile long job; // generation of the engine the frame belongs to
+
+	public FractalRenderer(int fractal, RenderEngine engine) {
+		this.fractal = (fractal == TYPE_JULIA) ? TYPE_JULIA : TYPE_MANDELBROT;
+		this.engine = engine;
+		buildLut();
+	}
+
+	/* (re)allocate the image and buffers if the size changed */
+	public void setSize(int width, int height) {
+		if (image != null && width == this.width && height == this.height)
+			return;
+
+		this.width = width;
+		this.height = height;
+
+		image = new BufferedImage(Math.max(width, 1), Math.max(height, 1), BufferedImage.TYPE_INT_RGB);
+		pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		iterBuffer = new int[width * height];
+		previous = new int[width * height];
+		zState = null;
+		fractions = null;
+		frameView = null;
+		updateGrid();
+	}
+
+	/* round the view to the pixel grid, moves it by less than half a pixel */
+	private void updateGrid() {
+		if (width <= 0 || height <= 0)
+			return;
+
+		spacingX = view.getWidth() / width;
+		spacingY = view.getHeight() / height;
+		originX = Math.rint(view.getXmin() / spacingX);
+		originY = Math.rint(view.getYmax() / spacingY);
+	}
+
+	/*
+	 * Render the whole frame, a quick low definition pass first
+	 * then the tiles in parallel. Blocks until done or cancelled.
+	 * @return true if the whole frame was rendered
+	 */
+	public boolean render() {
+		return render(engine.getGeneration());
+	}
+
+	/*
+	 * Same as part of the given generation of the engine, it stops within
+	 * a row of pixels once cancel() has been called since that generation
+	 */
+	public boolean render(long generation) {
+		job = generation;
+		if (cancelled())
+			return false;
+
+		RenderMetrics metrics = engine.getMetrics();
+		metrics.startFrame(generation, width, height, maxIter);
+		if (!renderFrame()) {
+			metrics.cancelFrame();
+			return false;
+		}
+		countFrame(metrics);
+		return true;
+	}
+
+	/* @return false if it was cancelled */
+	private boolean renderFrame() {
+		boolean smoothFrame = smooth;
+		if (smoothFrame && fractions == null)
+			fractions = new float[width * height];
+		Viewport last = frameView;
+		startFrame();
+		// iterBuffer is for this frame from now on, even if it is cancelled
+		recordFrame();
+
+		// cached tiles are only exact with doubles, deep zooms are never revisited the same anyway
+		boolean cached = cache != null && deepKernel == null;
+		TileCache.Key[] missing = null;
+		int found = 0;
+		if (cached) {
+			missing = loadCachedTiles();
+			for (TileCache.Key key : missing)
+				if (key == null)
+					found++;
+		}
+
+		// with doubles a point and its mirror image iterate the exact same values
+		symmetric = symmetry && deepKernel == null;
+		markMirrors();
+
+		// tiles follow the grid of the cache
+		int offsetX = 0, offsetY = 0;
+		if (cached) {
+			offsetX = Math.floorMod((long) originX, TILE_SIZE);
+			offsetY = Math.floorMod(-(long) originY, TILE_SIZE);
+		}
+
+		// the last frame stretched is a better start than the low definition pass
+		int[] order = drawPreview(last, offsetX, offsetY);
+		if (order == null)
+			drawLowDef();
+		if (cancelled())
+			return false;
+
+		// the tiles on disk are read once the preview is shown, before any is computed
+		if (cached) {
+			found += loadStoredTiles(missing);
+			engine.getMetrics().tilesCached(found);
+		}
+
+		// the farm is given the first tiles, in the order the workers here wait for them
+		RenderFarm farm = this.farm;
+		if (farm != null) {
+			if (order == null)
+				order = engine.tileOrder(width, height, offsetX, offsetY);
+			if (!submitTiles(farm, offsetX, offsetY, order))
+				return false;
+		}
+
+		// tiles are computed in parallel and repainted as they finish
+		boolean rendered = engine.render(width, height, offsetX, offsetY, order, this, job);
+		if (farm != null)
+			endFarmFrame(); // the tiles a cancelled frame did not wait for
+		if (!rendered)
+			return false;
+
+		// every tile computed its fractions as it was coloured
+		fractionsDone = smoothFrame && smooth;
+		// equalization needs the whole frame, and the colouring may have changed while rendering
+		if (equalize || colorsChanged)
+			recolor();
+
+		percent = 100.0;
+		return true;
+	}
+
+	/* report the counts of the frame just rendered */
+	private void countFrame(RenderMetrics metrics) {
+		long iterations = 0;
+		int escaped = 0, bounded = 0;
+		for (int i = 0; i < width * height; i++) {
+			int iter = iterBuffer[i];
+			if (iter >= maxIter)
+				bounded++;
+			else if (iter >= 0)
+				escaped++;
+			iterations += Math.max(iter, 0);
+		}
+		metrics.endFrame(width * height, iterations, escaped, bounded);
+	}
+
+	/*
+	 * Quick preview of the frame, only one pixel in step x step is computed
+	 * and the block is filled with its colour. step must divide TILE_SIZE.
+	 * The pixels computed are kept, the next render() of the same frame
+	 * starts from them and from the preview stretched.
+	 * @return false if it was cancelled
+	 */
+	public boolean renderPreview(long generation, final int step) {
+		job = generation;
+		if (cancelled())
+			return false;
+
+		startFrame();
+		recordFrame();
+
+		// the user is waiting for it, it goes before any other frame
+		return engine.render(width, height, 0, 0, null, new RenderEngine.TilePainter() {
+
+			@Override
+			public void paintTile(int x0, int y0, int w, int h) {
+				// tiles start on multiples of step so the blocks never cross them
+				for (int y = y0; y < y0 + h && !cancelled(); y += step)
+					for (int x = x0; x < x0 + w; x += step)
+						fillRect(x, y, step, step, getColor( iterAt(x, y) ));
+			}
+
+			@Override
+			public void tileDone(int x, int y, int w, int h, double percent) {
+				// the progress is the one of the whole frame, not of the preview
+				if (listener != null)
+					listener.areaRendered(x, y, w, h);
+			}
+		}, job, RenderScheduler.PRIORITY_INTERACTIVE);
+	}
+
+	/* pick the arithmetic for the view and keep what can be kept of the last frame */
+	private void startFrame() {
+		percent = 0.0;
+		fractionsDone = false;
+		cdfDone = false;
+		buildLut();
+
+		// the julia set cannot be zoomed so it always uses doubles
+		tier = (fractal == TYPE_MANDELBROT) ? PrecisionTier.forView(view, width, height)
+											: PrecisionTier.DOUBLE;
+		switch (tier) {
+		case DOUBLE_DOUBLE:
+			deepKernel = new DoubleDouble(view);
+			break;
+		case PERTURBATION:
+			deepKernel = ReferenceOrbit.forView(view, width, height, maxIter);
+			break;
+		default:
+			deepKernel = null;
+			break;
+		}
+
+		// saved the first time it is needed
+		if (deepKernel == null && zState == null)
+			zState = new double[2 * width * height];
+
+		// a view moved by whole pixels keeps what was computed
+		if (!keepFrame())
+			Arrays.fill(iterBuffer, -1);
+	}
+
+	/* what iterBuffer holds now, for the next frame */
+	private void recordFrame() {
+		frameView = view;
+		frameTier = tier;
+		frameMaxIter = maxIter;
+		frameJuliaRe = juliaRe;
+		frameJuliaIm = juliaIm;
+		frameSpacingX = spacingX;
+		frameSpacingY = spacingY;
+		frameOriginX = originX;
+		frameOriginY = originY;
+	}
+
+	/*
+	 * Colour the whole image again from the counts after the colouring changed,
+	 * in parallel and without iterating anything
+	 */
+	public void recolor() {
+		final boolean withFractions = smooth && !fractionsDone;
+		if (withFractions && fractions == null)
+			fractions = new float[width * height];
+
+		if (equalize && !cdfDone)
+			countHistogram();
+		buildLut();
+
+		engine.forRows(height, new RenderEngine.RowTask() {
+
+			@Override
+			public void run(int from, int to) {
+				colorRect(0, from, width, to - from, withFractions);
+			}
+		});
+		if (withFractions)
+			fractionsDone = true;
+
+		if (listener != null)
+			listener.areaRendered(0, 0, width, height);
+	}
+
+	/* colour of every count for the current colouring and maxIter */
+	private void buildLut() {
+		Palette p = palette;
+		float[] shares = (equalize && cdf != null && cdf.length == maxIter + 1) ? cdf : null;
+
+		colorsChanged = false;
+		int[] table = new int[maxIter + 1];
+		for (int i = 0; i < maxIter; i++) {
+			// equalized, the whole palette is spread once over the escaped pixels
+			double count = (shares != null) ? shares[i] * p.getPeriod() : i;
+			table[i] = p.getColor(count + paletteOffset);
+		}
+		table[maxIter] = p.getInside(maxIter);
+		lut = table;
+	}
+
+	/* share of the escaped pixels below each count, counted in parallel */
+	private void countHistogram() {
+		final int[] histogram = new int[maxIter + 1];
+		engine.forRows(height, new RenderEngine.RowTask() {
+
+			@Override
+			public void run(int from, int to) {
+				int[] local = new int[histogram.length];
+				for (int i = from * width; i < to * width; i++) {
+					int iter = iterBuffer[i];
+					if (iter >= 0 && iter < maxIter)
+						local[iter]++;
+				}
+				synchronized (histogram) {
+					for (int k = 0; k < local.length; k++)
+						histogram[k] += local[k];
+				}
+			}
+		});
+
+		long total = 0;
+		for (int k = 0; k < maxIter; k++)
+			total += histogram[k];
+
+		float[] shares = new float[maxIter + 1];
+		long below = 0;
+		for (int k = 0; k <= maxIter; k++) {
+			shares[k] = (total > 0) ? (float) below / total : 0f;
+			below += histogram[k];
+		}
+		cdf = shares;
+		cdfDone = true;
+	}
+
+	/* write the colour of the pixels of a rectangle, computing their fractions first if asked */
+	private void colorRect(int x0, int y0, int w, int h, boolean withFractions) {
+		int[] table = lut;
+		int last = table.length - 1; // maxIter of the table
+		boolean blend = smooth && fractions != null;
+
+		for (int y = y0; y < y0 + h; y++) {
+			int offset = y * width;
+			for (int i = offset + x0; i < offset + x0 + w; i++) {
+				int iter = iterBuffer[i];
+				if (iter < 0)
+					continue; // not computed yet, left as it is
+
+				if (withFractions)
+					fractions[i] = fraction(i);
+
+				if (iter >= last)
+					pixels[i] = table[last];
+				else if (blend && iter + 1 < last)
+					pixels[i] = Palette.mix(table[iter], table[iter + 1], fractions[i]);
+				else
+					pixels[i] = table[iter];
+			}
+		}
+	}
+
+	/*
+	 * How far between its count and the next one a pixel is, from how far past
+	 * the bailout z went (continuous potential); an escaped pixel filled without
+	 * being iterated is iterated again for its z
+	 */
+	private float fraction(int i) {
+		if (tier != PrecisionTier.DOUBLE || zState == null)
+			return 0f;
+
+		int iter = iterBuffer[i];
+		if (zState[2 * i] == NO_Z && iter >= 0 && iter < maxIter)
+			iterate(i % width, i / width);
+
+		double zr = zState[2 * i], zi = zState[2 * i + 1];
+		double r2 = zr * zr + zi * zi;
+		if (!(r2 >= EscapeTime.BAILOUT_SQUARED) || r2 == Double.POSITIVE_INFINITY)
+			return 0f;
+
+		// log2 |z| = log2(r2) / 2
+		double nu = Math.log(Math.log(r2) / (2 * Math.log(2))) / Math.log(2);
+		return (float) Math.max(0.0, Math.min(1.0, 1.0 - nu));
+	}
+
+	/*
+	 * Stop the frame being rendered, the tiles it finished are kept for the next one
+	 * @return the new generation of the engine
+	 */
+	public long cancel() {
+		return engine.cancel();
+	}
+
+	private boolean cancelled() {
+		return engine.isCancelled(job);
+	}
+
+	/*
+	 * If the view is the last one moved by whole pixels, move its counts in
+	 * iterBuffer so only the pixels that were not in it are computed.
+	 * A frame that was cancelled also keeps the tiles it finished,
+	 * a different maxIter only changes the points that reached it.
+	 * @return false if nothing could be kept
+	 */
+	private boolean keepFrame() {
+		if (frameView == null || tier != frameTier || juliaRe != frameJuliaRe || juliaIm != frameJuliaIm)
+			return false;
+
+		// pixel x of the new view is pixel x + dx of the last one
+		long dx, dy;
+		if (tier == PrecisionTier.DOUBLE) {
+			// both on the pixel grid, it is exact
+			if (spacingX != frameSpacingX || spacingY != frameSpacingY)
+				return false;
+			dx = (long)(originX - frameOriginX);
+			dy = (long)(frameOriginY - originY);
+		} else {
+			if (view.getWidth() != frameView.getWidth() || view.getHeight() != frameView.getHeight())
+				return false;
+			double fx = view.getCenterRe().subtract(frameView.getCenterRe()).doubleValue() * width / view.getWidth();
+			double fy = -view.getCenterIm().subtract(frameView.getCenterIm()).doubleValue() * height / view.getHeight();
+			dx = Math.round(fx);
+			dy = Math.round(fy);
+			if (Math.abs(fx - dx) > 1e-6 || Math.abs(fy - dy) > 1e-6)
+				return false;
+		}
+		if (Math.abs(dx) >= width || Math.abs(dy) >= height)
+			return false;
+
+		int sx = (int) dx, sy = (int) dy;
+		int x0 = Math.max(0, -sx), x1 = Math.min(width, width - sx); // columns still visible
+		int y0 = Math.max(0, -sy), y1 = Math.min(height, height - sy);
+		boolean withZ = (deepKernel == null);
+
+		// rows are moved in the order that does not overwrite the ones still to move
+		for (int i = 0; i < height; i++) {
+			int y = (sy > 0) ? i : height - 1 - i;
+			int offset = y * width;
+			if (y < y0 || y >= y1) {
+				Arrays.fill(iterBuffer, offset, offset + width, -1);
+				continue;
+			}
+			int from = (y + sy) * width + x0 + sx;
+			System.arraycopy(iterBuffer, from, iterBuffer, offset + x0, x1 - x0);
+			if (withZ)
+				System.arraycopy(zState, 2 * from, zState, 2 * (offset + x0), 2 * (x1 - x0));
+			Arrays.fill(iterBuffer, offset, offset + x0, -1);
+			Arrays.fill(iterBuffer, offset + x1, offset + width, -1);
+		}
+
+		if (maxIter != frameMaxIter)
+			changeMaxIter(frameMaxIter, withZ);
+		return true;
+	}
+
+	/*
+	 * Counts kept from a frame rendered with maxIter last:
+	 * lowering maxIter only clamps them, raising it resumes the points that
+	 * had not escaped from where they stopped, or computes them again when
+	 * nothing was saved for them (past plain doubles, filled by subdivide)
+	 */
+	private void changeMaxIter(int last, boolean withZ) {
+		for (int i = 0; i < iterBuffer.length; i++) {
+			int iter = iterBuffer[i];
+			if (iter == RESUME) {
+				// still waiting from an older maxIter
+				iterBuffer[i] = -1;
+			} else if (maxIter < last) {
+				if (iter >= maxIter) {
+					iterBuffer[i] = maxIter;
+					// the z saved is after another number of iterations, unless it is in the set
+					if (withZ && !(iter == last && Double.isNaN(zState[2 * i])))
+						zState[2 * i] = NO_Z;
+				}
+			} else if (iter == last) {
+				if (!withZ || zState[2 * i] == NO_Z)
+					iterBuffer[i] = -1;
+				else if (Double.isNaN(zState[2 * i]))
+					iterBuffer[i] = maxIter; // known to be in the set
+				else
+					iterBuffer[i] = RESUME;
+			}
+		}
+		resumeFrom = last;
+	}
+
+	/*
+	 * Copy every tile of the frame found in the memory of the cache to iterBuffer.
+	 * @return the keys of the tiles of the frame, the ones found are null
+	 */
+	private TileCache.Key[] loadCachedTiles() {
+		long tx0 = tileX(0), tx1 = tileX(width - 1);
+		long ty0 = tileY(0), ty1 = tileY(height - 1);
+		int cols = (int)(tx1 - tx0 + 1);
+		TileCache.Key[] keys = new TileCache.Key[cols * (int)(ty1 - ty0 + 1)];
+		for (int i = 0; i < keys.length; i++)
+			keys[i] = tileKey(tx0 + i % cols, ty0 + i / cols);
+
+		int[][] tiles = new int[keys.length][];
+		if (cache.getAll(keys, tiles) > 0)
+			copyTiles(keys, tiles, tx0, ty0, cols);
+		return keys;
+	}
+
+	/*
+	 * Copy the tiles of keys found in the store of the cache to iterBuffer,
+	 * all read at once, it is slower than memory so it is done after the preview.
+	 * @return the number found
+	 */
+	private int loadStoredTiles(TileCache.Key[] keys) {
+		long tx0 = tileX(0), tx1 = tileX(width - 1);
+		int[][] tiles = new int[keys.length][];
+		int found = cache.getAllStored(keys, tiles);
+		if (found > 0)
+			copyTiles(keys, tiles, tx0, tileY(0), (int)(tx1 - tx0 + 1));
+		return found;
+	}
+
+	/* copy the part inside the frame of the tiles found, the keys are set to null */
+	private void copyTiles(TileCache.Key[] keys, int[][] tiles, long tx0, long ty0, int cols) {
+		for (int i = 0; i < keys.length; i++) {
+			int[] tile = tiles[i];
+			if (tile == null)
+				continue;
+			keys[i] = null;
+
+			// part of the tile inside the frame
+			long tx = tx0 + i % cols, ty = ty0 + i / cols;
+			int x0 = (int)(tx * TILE_SIZE - (long) originX);
+			int y0 = (int)(ty * TILE_SIZE + (long) originY);
+			int x1 = Math.min(x0 + TILE_SIZE, width);
+			int y1 = Math.min(y0 + TILE_SIZE, height);
+			int left = Math.max(x0, 0);
+
+			for (int y = Math.max(y0, 0); y < y1; y++) {
+				System.arraycopy(tile, (y - y0) * TILE_SIZE + (left - x0),
+								 iterBuffer, y * width + left, x1 - left);
+				noZ(y * width + left, y * width + x1);
+			}
+		}
+	}
+
+	private long tileX(int x) {
+		return Math.floorDiv((long) originX + x, TILE_SIZE);
+	}
+
+	private long tileY(int y) {
+		return Math.floorDiv(y - (long) originY, TILE_SIZE);
+	}
+
+	private TileCache.Key tileKey(long tx, long ty) {
+		int method = 0;
+		if (subdivide)
+			method |= TileCache.Key.SUBDIVIDED;
+		if (EscapeTime.isCardioidCheck())
+			method |= TileCache.Key.CARDIOID;
+		if (EscapeTime.isPeriodicityCheck())
+			method |= TileCache.Key.PERIODICITY;
+		return new TileCache.Key(spacingX, spacingY, tx, ty, maxIter, fractal, juliaRe, juliaIm, method);
+	}
+
+	/*
+	 * Draw the last frame scaled and moved to the new view in a single pass,
+	 * the pixels already known (from the cache) are drawn exactly.
+	 * @return the order to render the tiles in, the ones where the preview is
+	 * the least accurate first, or null if there is no last frame
+	 */
+	private int[] drawPreview(Viewport last, int offsetX, int offsetY) {
+		if (last == null)
+			return null;
+
+		System.arraycopy(pixels, 0, previous, 0, pixels.length);
+
+		// where the pixels of the new view were in the last frame
+		// the centres are subtracted in BigDecimal so this works at any depth
+		double scaleX = view.getWidth() / last.getWidth();
+		double scaleY = view.getHeight() / last.getHeight();
+		double shiftX = view.getCenterRe().subtract(last.getCenterRe()).doubleValue() * width / last.getWidth();
+		double shiftY = view.getCenterIm().subtract(last.getCenterIm()).doubleValue() * height / last.getHeight();
+
+		int cols = (offsetX + width + TILE_SIZE - 1) / TILE_SIZE;
+		int rows = (offsetY + height + TILE_SIZE - 1) / TILE_SIZE;
+		final int[] score = new int[cols * rows];
+
+		for (int y = 0; y < height; y++) {
+			int sy = (int) Math.floor((y - height / 2.0) * scaleY - shiftY + height / 2.0 + 0.5);
+			int tileRow = ((y + offsetY) / TILE_SIZE) * cols;
+			int offset = y * width;
+
+			for (int x = 0; x < width; x++) {
+				int tile = tileRow + (x + offsetX) / TILE_SIZE;
+				int iter = iterBuffer[offset + x];
+				if (iter >= 0) {
+					pixels[offset + x] = getColor(iter);
+					continue;
+				}
+
+				int sx = (int) Math.floor((x - width / 2.0) * scaleX + shiftX + width / 2.0 + 0.5);
+				if (sx < 0 || sx >= width || sy < 0 || sy >= height) {
+					// nothing was there
+					pixels[offset + x] = 0;
+					score[tile] += 2;
+					continue;
+				}
+
+				// a detailed area is what suffers the most from being stretched
+				int source = sy * width + sx;
+				int rgb = previous[source];
+				pixels[offset + x] = rgb;
+				if (sx + 1 < width && previous[source + 1] != rgb)
+					score[tile]++;
+				if (sy + 1 < height && previous[source + width] != rgb)
+					score[tile]++;
+			}
+		}
+
+		if (listener != null)
+			listener.areaRendered(0, 0, width, height);
+
+		// the sort is stable, tiles with the same score keep the order of the engine
+		int[] base = engine.tileOrder(width, height, offsetX, offsetY);
+		Integer[] tiles = new Integer[score.length];
+		for (int i = 0; i < tiles.length; i++)
+			tiles[i] = base[i];
+		Arrays.sort(tiles, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Integer.compare(score[b], score[a]);
+			}
+		});
+
+		int[] order = new int[tiles.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = tiles[i];
+		return order;
+	}
+
+	private void drawLowDef() {
+		// quickly drawing buffer (only draw some of the pixels)
+		// the samples are kept in iterBuffer so the high definition pass reuses them
+		for (int x = 0; x < width; x += LOW_DEF_STEP) {
+			if (cancelled())
+				return;
+			for (int y = 0; y < height; y += LOW_DEF_STEP) {
+
+				int rgb = getColor( iterAt(x, y) );
+
+				fillRect(x, y, LOW_DEF_STEP, LOW_DEF_STEP, rgb);
+			}
+			// only the column just drawn
+			if (listener != null)
+				listener.areaRendered(x, 0, LOW_DEF_STEP, height);
+		}
+	}
+
+	@Override
+	public void paintTile(int x0, int y0, int w, int h) {
+		// tiles never overlap so workers can write to the buffers directly
+		// points that had not escaped at the last maxIter carry on first
+		for (int y = y0; y < y0 + h && !cancelled(); y++) {
+			int offset = y * width;
+			for (int x = x0; x < x0 + w; x++)
+				if (iterBuffer[offset + x] == RESUME)
+					iterAt(x, y);
+		}
+
+		// only the part not known yet (from the cache or the last frame) is computed
+		int[] box = unknownBounds(x0, y0, w, h);
+		boolean computed = box != null;
+		if (computed && frameFarm != null) {
+			if (!fromFarm(x0, y0))
+				return;
+			// what the farm could not do
+			box = unknownBounds(x0, y0, w, h);
+		}
+		if (box != null) {
+			if (subdivide)
+				subdivide(box[0], box[1], box[2], box[3]);
+			else
+				computeRect(box[0], box[1], box[2], box[3]);
+		}
+		if (computed) {
+			// a tile left half done is finished by the next frame if it keeps it
+			if (cancelled())
+				return;
+
+			// only whole tiles are kept, not the ones cut by the edges of the frame
+			// nor the ones still waiting for their mirror image
+			if (cache != null && deepKernel == null && w == TILE_SIZE && h == TILE_SIZE
+				&& isKnown(x0, y0, w, h))
+				cache.put(tileKey(tileX(x0), tileY(y0)), copyRect(x0, y0, w, h));
+		}
+		if (cancelled())
+			return;
+
+		colorRect(x0, y0, w, h, smooth && fractions != null);
+		mirrorTile(x0, y0, w, h);
+	}
+
+	/*
+	 * Start giving the farm the part not known yet of the tiles of the frame,
+	 * the first ones now and the others as the workers here take tiles.
+	 * @return false if it was cancelled
+	 */
+	private boolean submitTiles(RenderFarm farm, int offsetX, int offsetY, int[] order) {
+		synchronized (farmLock) {
+			farmTiles = new HashMap<Integer, RenderFarm.Tile>();
+			farmTaken = new HashSet<Integer>();
+			farmFrame = new RenderFarm.Frame(fractal, view, width, height, maxIter, juliaRe, juliaIm);
+			farmOrder = order;
+			farmNext = 0;
+			farmOffsetX = offsetX;
+			farmOffsetY = offsetY;
+			frameFarm = farm;
+		}
+		if (submitNext(FARM_AHEAD * farm.getCapacity()))
+			return true;
+		endFarmFrame();
+		return false;
+	}
+
+	/*
+	 * Give the farm the next tiles of the order not known yet, clipped like the
+	 * engine does, skipping the ones a worker here has started.
+	 * @return false if the frame was cancelled
+	 */
+	private boolean submitNext(int count) {
+		synchronized (farmLock) {
+			int cols = (farmOffsetX + width + TILE_SIZE - 1) / TILE_SIZE;
+			try {
+				while (count > 0 && farmNext < farmOrder.length) {
+					if (cancelled())
+						return false;
+
+					int tile = farmOrder[farmNext++];
+					int tx = (tile % cols) * TILE_SIZE - farmOffsetX;
+					int ty = (tile / cols) * TILE_SIZE - farmOffsetY;
+					int x = Math.max(tx, 0);
+					int y = Math.max(ty, 0);
+					if (farmTaken.contains(y * width + x))
+						continue;
+					int[] box = unknownBounds(x, y, Math.min(tx + TILE_SIZE, width) - x, Math.min(ty + TILE_SIZE, height) - y);
+					if (box != null) {
+						farmTiles.put(y * width + x, frameFarm.submit(farmFrame, box[0], box[1], box[2] - box[0] + 1, box[3] - box[1] + 1));
+						count--;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* cancel the tiles of the frame the farm still has, and forget them */
+	private void endFarmFrame() {
+		synchronized (farmLock) {
+			frameFarm.cancel(farmTiles.values());
+			frameFarm = null;
+			farmTiles = null;
+			farmTaken = null;
+			farmFrame = null;
+			farmOrder = null;
+		}
+	}
+
+	/*
+	 * Counts from the farm of the pixels of the tile not known yet,
+	 * the ones it could not compute are left unknown. A tile the farm
+	 * was not given yet is left to the worker here.
+	 * @return false if the frame was cancelled while waiting for them
+	 */
+	private boolean fromFarm(int x0, int y0) {
+		RenderFarm.Tile tile;
+		synchronized (farmLock) {
+			tile = farmTiles.get(y0 * width + x0);
+			farmTaken.add(y0 * width + x0);
+		}
+		// the farm is given one more tile for each one taken here
+		if (!submitNext(1))
+			return false;
+		if (tile == null)
+			return true;
+		try {
+			while (!tile.await(FARM_POLL_MILLIS))
+				if (cancelled())
+					return false;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		int[] counts = tile.getCounts();
+		if (counts == null)
+			return true;
+		for (int y = 0; y < tile.getHeight(); y++) {
+			int offset = (tile.getY() + y) * width + tile.getX();
+			for (int x = 0; x < tile.getWidth(); x++) {
+				int i = offset + x;
+				if (iterBuffer[i] < 0 && iterBuffer[i] != MIRROR) {
+					iterBuffer[i] = counts[y * tile.getWidth() + x];
+					if (zState != null)
+						zState[2 * i] = NO_Z;
+				}
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Mark MIRROR the pixels below the real axis whose mirror image is in the
+	 * frame and not known yet, the ones whose mirror image is known are copied.
+	 * The MIRROR left by a cancelled frame are computed again otherwise.
+	 */
+	private void markMirrors() {
+		for (int y = 0; y < height; y++) {
+			int offset = y * width;
+			long my = 2 * (long) originY - y; // row of the mirror images
+			boolean below = symmetric && y > originY && my >= 0;
+
+			for (int x = 0; x < width; x++) {
+				int i = offset + x;
+				if (iterBuffer[i] == MIRROR)
+					iterBuffer[i] = -1;
+				if (!below || iterBuffer[i] >= 0)
+					continue;
+
+				long mx = mirrorX(x);
+				if (mx < 0 || mx >= width)
+					continue;
+				int m = (int) my * width + (int) mx;
+				if (iterBuffer[m] >= 0)
+					copyMirror(m, i);
+				else
+					iterBuffer[i] = MIRROR;
+			}
+		}
+	}
+
+	/*
+	 * Copy the pixels of a tile, already coloured, to the MIRROR pixels they
+	 * are the mirror image of. |z| is the same so they get the same colour.
+	 */
+	private void mirrorTile(int x0, int y0, int w, int h) {
+		if (!symmetric)
+			return;
+
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+		for (int y = y0; y < Math.min(y0 + h, (long) originY + 1); y++) {
+			long my = 2 * (long) originY - y;
+			if (my >= height)
+				continue;
+
+			int offset = y * width;
+			for (int x = x0; x < x0 + w; x++) {
+				long mx = mirrorX(x);
+				if (mx < 0 || mx >= width)
+					continue;
+				int m = (int) my * width + (int) mx;
+				if (iterBuffer[m] != MIRROR)
+					continue;
+
+				copyMirror(offset + x, m);
+				pixels[m] = pixels[offset + x];
+				if (fractions != null)
+					fractions[m] = fractions[offset + x];
+				minX = Math.min(minX, (int) mx);
+				maxX = Math.max(maxX, (int) mx);
+				minY = Math.min(minY, (int) my);
+				maxY = Math.max(maxY, (int) my);
+			}
+		}
+		if (maxY >= 0 && listener != null)
+			listener.areaRendered(minX, minY, maxX - minX + 1, maxY - minY + 1);
+	}
+
+	/* column of the mirror image of the pixels of column x */
+	private long mirrorX(int x) {
+		return (fractal == TYPE_MANDELBROT) ? x : -2 * (long) originX - x;
+	}
+
+	/* the mirror image has the conjugate z for the mandelbrot set and the opposite one for a julia set */
+	private void copyMirror(int from, int to) {
+		iterBuffer[to] = iterBuffer[from];
+		if (zState == null)
+			return;
+
+		double zr = zState[2 * from], zi = zState[2 * from + 1];
+		if (zr == NO_Z || Double.isNaN(zr)) {
+			zState[2 * to] = zr;
+			zState[2 * to + 1] = zi;
+		} else {
+			zState[2 * to] = (fractal == TYPE_MANDELBROT) ? zr : -zr;
+			zState[2 * to + 1] = -zi;
+		}
+	}
+
+	@Override
+	public void tileDone(int x, int y, int w, int h, double percent) {
+		this.percent = percent;
+		if (listener != null)
+			listener.areaRendered(x, y, w, h);
+	}
+
+	/*
+	 * @return the smallest rectangle (inclusive bounds) with every pixel not computed yet,
+	 * null if there is none, the MIRROR pixels are left to their mirror image
+	 */
+	private int[] unknownBounds(int x0, int y0, int w, int h) {
+		int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE, maxX = -1, maxY = -1;
+		for (int y = y0; y < y0 + h; y++) {
+			int offset = y * width;
+			for (int x = x0; x < x0 + w; x++) {
+				if (iterBuffer[offset + x] < 0 && iterBuffer[offset + x] != MIRROR) {
+					minX = Math.min(minX, x);
+					maxX = Math.max(maxX, x);
+					minY = Math.min(minY, y);
+					maxY = y;
+				}
+			}
+		}
+		return (maxY < 0) ? null : new int[] { minX, minY, maxX, maxY };
+	}
+
+	private boolean isKnown(int x0, int y0, int w, int h) {
+		for (int y = y0; y < y0 + h; y++)
+			for (int i = y * width + x0; i < y * width + x0 + w; i++)
+				if (iterBuffer[i] < 0)
+					return false;
+		return true;
+	}
+
+	private int[] copyRect(int x0, int y0, int w, int h) {
+		int[] rect = new int[w * h];
+		for (int y = 0; y < h; y++)
+			System.arraycopy(iterBuffer, (y0 + y) * width + x0, rect, y * w, w);
+		return rect;
+	}
+
+	/*
+	 * Mariani-Silver: compute the border of the rectangle (inclusive bounds),
+	 * if it has the same iteration count everywhere the set being connected
+	 * means the inside has it too, otherwise split in four and try again
+	 */
+	private void subdivide(int x0, int y0, int x1, int y1) {
+		// the border is always finished so a uniform one is never filled wrongly
+		if (cancelled())
+			return;
+
+		int first = iterAt(x0, y0);
+		boolean uniform = true;
+
+		// every border pixel has to be computed, the children rely on it
+		for (int x = x0; x <= x1; x++) {
+			if (iterAt(x, y0) != first)
+				uniform = false;
+			if (iterAt(x, y1) != first)
+				uniform = false;
+		}
+		for (int y = y0 + 1; y < y1; y++) {
+			if (iterAt(x0, y) != first)
+				uniform = false;
+			if (iterAt(x1, y) != first)
+				uniform = false;
+		}
+
+		// a rectangle one pixel wide has no inside
+		if (uniform) {
+			for (int y = y0 + 1; y < y1 && x1 - x0 > 1; y++) {
+				Arrays.fill(iterBuffer, y * width + x0 + 1, y * width + x1, first);
+				noZ(y * width + x0 + 1, y * width + x1);
+			}
+			return;
+		}
+
+		if (x1 - x0 <= MIN_SUBDIVIDE || y1 - y0 <= MIN_SUBDIVIDE) {
+			computeRect(x0 + 1, y0 + 1, x1 - 1, y1 - 1);
+			return;
+		}
+
+		// children share their borders with the parent and each other
+		int mx = (x0 + x1) >>> 1;
+		int my = (y0 + y1) >>> 1;
+		subdivide(x0, y0, mx, my);
+		subdivide(mx, y0, x1, my);
+		subdivide(x0, my, mx, y1);
+		subdivide(mx, my, x1, y1);
+	}
+
+	private void computeRect(int x0, int y0, int x1, int y1) {
+		if (deepKernel != null) {
+			for (int y = y0; y <= y1 && !cancelled(); y++)
+				for (int x = x0; x <= x1; x++)
+					iterAt(x, y);
+			return;
+		}
+
+		// whole rows go through the row kernel which can be vectorized
+		int n = x1 - x0 + 1;
+		if (n <= 0)
+			return;
+
+		double[] re = new double[n];
+		int[] row = new int[n];
+		double[] z = (deepKernel == null) ? new double[2 * n] : null;
+		for (int i = 0; i < n; i++)
+			re[i] = pixel2Re(x0 + i);
+
+		RowKernel kernel = EscapeTime.getRowKernel();
+		for (int y = y0; y <= y1 && !cancelled(); y++) {
+			double im = pixel2Im(y);
+			if (fractal == TYPE_MANDELBROT)
+				kernel.mandelbrot(re, im, n, maxIter, row, z);
+			else
+				kernel.julia(re, im, n, juliaRe, juliaIm, maxIter, row, z);
+
+			System.arraycopy(row, 0, iterBuffer, y * width + x0, n);
+			System.arraycopy(z, 0, zState, 2 * (y * width + x0), 2 * n);
+		}
+	}
+
+	/* iteration count of a pixel, only computed the first time it is needed */
+	private int iterAt(int x, int y) {
+		int i = y * width + x;
+		int iter = iterBuffer[i];
+		if (iter < 0) {
+			iter = (iter == RESUME) ? resume(x, y) : iterate(x, y);
+			iterBuffer[i] = iter;
+		}
+		return iter;
+	}
+
+	/*
+	 * points filled without being iterated have no z, whatever their count:
+	 * nothing to resume from, and what is left there belongs to another frame
+	 */
+	private void noZ(int from, int to) {
+		if (zState == null)
+			return;
+		for (int i = from; i < to; i++)
+			zState[2 * i] = NO_Z;
+	}
+
+	private int iterate(int x, int y) {
+		if (deepKernel != null) {
+			// offset of the pixel from the centre of the view
+			double dre = (x - width / 2.0) * view.getWidth() / width;
+			double dim = (height / 2.0 - y) * view.getHeight() / height;
+			return deepKernel.iterate(dre, dim, maxIter);
+		}
+
+		// the z where it stops is saved to resume it with a higher maxIter
+		int i = 2 * (y * width + x);
+		if (fractal == TYPE_MANDELBROT)
+			return EscapeTime.mandelbrot(pixel2Re(x), pixel2Im(y), maxIter, zState, i);
+		return EscapeTime.julia(pixel2Re(x), pixel2Im(y), juliaRe, juliaIm, maxIter, zState, i);
+	}
+
+	private int resume(int x, int y) {
+		int i = 2 * (y * width + x);
+		if (fractal == TYPE_MANDELBROT)
+			return EscapeTime.resume(pixel2Re(x), pixel2Im(y), resumeFrom, maxIter, zState, i);
+		return EscapeTime.resume(juliaRe, juliaIm, resumeFrom, maxIter, zState, i);
+	}
+
+	/* packed RGB value depending on iteration count */
+	private int getColor(int iter) {
+		int[] table = lut;
+		return table[Math.min(iter, table.length - 1)];
+	}
+
+	/* fill a rectangle of the raster, clipped to the image */
+	private void fillRect(int x0, int y0, int w, int h, int rgb) {
+		int x1 = Math.min(x0 + w, width);
+		int y1 = Math.min(y0 + h, height);
+		x0 = Math.max(x0, 0);
+		y0 = Math.max(y0, 0);
+
+		for (int y = y0; y < y1; y++) {
+			int offset = y * width;
+			for (int x = x0; x < x1; x++)
+				pixels[offset + x] = rgb;
+		}
+	}
+
+	public Point2D.Double complex2Pixel(Complex c) {
+		double xp = c.getRe() / spacingX - originX;
+		double yp = originY - c.getIm() / spacingY;
+
+		return new Point2D.Double(xp, yp);
+	}
+
+	public Complex pixel2Complex(double x, double y) {
+		return new Complex(pixel2Re(x), pixel2Im(y));
+	}
+
+	/* same mapping as pixel2Complex without creating a Complex */
+	public double pixel2Re(double x) {
+		return (originX + x) * spacingX;
+	}
+
+	public double pixel2Im(double y) {
+		return (originY - y) * spacingY;
+	}
+
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+	public int getFractal() {
+		return fractal;
+	}
+
+	public Viewport getView() {
+		return view;
+	}
+
+	public void setView(Viewport view) {
+		this.view = view;
+		updateGrid();
+	}
+
+	public int getMaxIter() {
+		return maxIter;
+	}
+
+	public void setMaxIter(int maxIter) {
+		this.maxIter = maxIter;
+	}
+
+	public void setJuliaPoint(double re, double im) {
+		juliaRe = re;
+		juliaIm = im;
+	}
+
+	/* keep the tiles rendered with plain doubles, null to compute every frame */
+	public void setTileCache(TileCache cache) {
+		this.cache = cache;
+	}
+
+	public TileCache getTileCache() {
+		return cache;
+	}
+
+	/* compute the tiles on the workers of a render farm, null to compute them here */
+	public void setFarm(RenderFarm farm) {
+		this.farm = farm;
+	}
+
+	public RenderFarm getFarm() {
+		return farm;
+	}
+
+	/* the colouring setters take effect with recolor(), or at the end of the frame being rendered */
+	public void setPalette(Palette palette) {
+		this.palette = palette;
+		colorsChanged = true;
+	}
+
+	public Palette getPalette() {
+		return palette;
+	}
+
+	public void setPaletteOffset(int offset) {
+		paletteOffset = offset;
+		colorsChanged = true;
+	}
+
+	public int getPaletteOffset() {
+		return paletteOffset;
+	}
+
+	public void setSmooth(boolean smooth) {
+		this.smooth = smooth;
+		colorsChanged = true;
+	}
+
+	public boolean isSmooth() {
+		return smooth;
+	}
+
+	public void setEqualize(boolean equalize) {
+		this.equalize = equalize;
+		colorsChanged = true;
+	}
+
+	public boolean isEqualize() {
+		return equalize;
+	}
+
+	public void setSubdivide(boolean subdivide) {
+		this.subdivide = subdivide;
+	}
+
+	public PrecisionTier getPrecisionTier() {
+		return tier;
+	}
+
+	public double getPercent() {
+		return percent;
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	public int[] getIterBuffer() {
+		return iterBuffer;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public RenderEngine getEngine() {
+		return engine;
+	}
+}
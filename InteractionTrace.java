@@ -0,0 +1,150 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class InteractionTrace {
+
+	/*
+	 * What the user asked the panels to draw and when, one line per action:
+	 *
+	 *   millis action panel width height maxIter centreRe centreIm viewWidth viewHeight juliaRe juliaIm
+	 *
+	 * millis from the start of the trace, action one of the constants below,
+	 * panel mandelbrot or julia. The line holds the whole state the action
+	 * led to rather than its arguments (pixels of a drag, fields edited), so
+	 * TraceReplay can draw it again without the windows.
+	 * Recorded when the explorer is started with -Dfractal.trace=file.
+	 */
+
+	public static final String INIT = "init"; // first frame of a panel
+	public static final String VALUES = "values"; // fields of the main frame edited
+	public static final String ZOOM = "zoom";
+	public static final String PAN = "pan";
+	public static final String EQUALIZE = "equalize"; // Equalize Axis button
+	public static final String ITERATIONS = "iterations"; // julia panel following the main one
+	public static final String POINT = "point"; // julia point moved
+
+	private static InteractionTrace defaultTrace;
+	private static boolean defaultOpened = false;
+
+	/* one line of a trace */
+	public static class Action {
+
+		public final long millis;
+		public final String action;
+		public final int fractal; // FractalRenderer.TYPE_MANDELBROT or TYPE_JULIA
+		public final int width, height;
+		public final int maxIter;
+		public final Viewport view;
+		public final double juliaRe, juliaIm;
+
+		public Action(long millis, String action, int fractal, int width, int height, int maxIter,
+					  Viewport view, double juliaRe, double juliaIm) {
+			this.millis = millis;
+			this.action = action;
+			this.fractal = fractal;
+			this.width = width;
+			this.height = height;
+			this.maxIter = maxIter;
+			this.view = view;
+			this.juliaRe = juliaRe;
+			this.juliaIm = juliaIm;
+		}
+
+		@Override
+		public String toString() {
+			return millis + " " + action + " " + ((fractal == FractalRenderer.TYPE_JULIA) ? "julia" : "mandelbrot")
+				   + " " + width + " " + height + " " + maxIter
+				   + " " + view.getCenterRe().toString() + " " + view.getCenterIm().toString()
+				   + " " + view.getWidth() + " " + view.getHeight() + " " + juliaRe + " " + juliaIm;
+		}
+
+		/* parse a line written by toString() */
+		public static Action parse(String line) {
+			String[] f = line.trim().split("\\s+");
+			if (f.length != 12)
+				throw new IllegalArgumentException("Not a trace line: " + line);
+
+			try {
+				int fractal;
+				if (f[2].equals("mandelbrot"))
+					fractal = FractalRenderer.TYPE_MANDELBROT;
+				else if (f[2].equals("julia"))
+					fractal = FractalRenderer.TYPE_JULIA;
+				else
+					throw new IllegalArgumentException("Unknown panel " + f[2] + " in: " + line);
+
+				Viewport view = new Viewport(new BigDecimal(f[6]), new BigDecimal(f[7]),
+											 Double.parseDouble(f[8]), Double.parseDouble(f[9]));
+				return new Action(Long.parseLong(f[0]), f[1], fractal, Integer.parseInt(f[3]),
+								  Integer.parseInt(f[4]), Integer.parseInt(f[5]), view,
+								  Double.parseDouble(f[10]), Double.parseDouble(f[11]));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad number in trace line: " + line);
+			}
+		}
+	}
+
+	private final PrintWriter out;
+	private final long start = System.nanoTime();
+
+	public InteractionTrace(File file) throws IOException {
+		out = new PrintWriter(new FileWriter(file));
+		out.println("# millis action panel width height maxIter centreRe centreIm viewWidth viewHeight juliaRe juliaIm");
+		out.flush();
+	}
+
+	/*
+	 * Trace of this program, written to the file given with -Dfractal.trace=file.
+	 * @return null if there is none or it cannot be written
+	 */
+	public static synchronized InteractionTrace getDefault() {
+		if (defaultOpened)
+			return defaultTrace;
+		defaultOpened = true;
+
+		String file = System.getProperty("fractal.trace");
+		if (file == null)
+			return null;
+
+		try {
+			defaultTrace = new InteractionTrace(new File(file));
+		} catch (IOException e) {
+			System.err.println("Interaction trace not recorded (" + e + ")");
+		}
+		return defaultTrace;
+	}
+
+	/* the user did action and the panel is now to draw this */
+	public synchronized void record(String action, int fractal, int width, int height, int maxIter,
+									Viewport view, Complex juliaPoint) {
+		long millis = (System.nanoTime() - start) / 1000000;
+		double re = (juliaPoint != null) ? juliaPoint.getRe() : 0.0;
+		double im = (juliaPoint != null) ? juliaPoint.getIm() : 0.0;
+
+		// flushed at once, actions come at the pace of the user and the explorer is closed by exit
+		out.println(new Action(millis, action, fractal, width, height, maxIter, view, re, im));
+		out.flush();
+	}
+
+	/* every action of a trace file, in the order they were recorded */
+	public static List<Action> read(File file) throws IOException {
+		List<Action> actions = new ArrayList<Action>();
+		try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().isEmpty() || line.startsWith("#"))
+					continue;
+				actions.add(Action.parse(line));
+			}
+		}
+		return actions;
+	}
+}
@@ -76,4 +76,24 @@ public class JuliaFrame extends JFrame {
 	public void updateMaxIter(int maxIter) {
 		explorerPanel.setMaxIter(maxIter);
 	}
+	
+	public void setShowMetrics(boolean show) {
+		explorerPanel.setShowMetrics(show);
+	}
+	
+	public void setPalette(Palette palette) {
+		explorerPanel.setPalette(palette);
+	}
+	
+	public void setSmooth(boolean smooth) {
+		explorerPanel.setSmooth(smooth);
+	}
+	
+	public void setEqualize(boolean equalize) {
+		explorerPanel.setEqualize(equalize);
+	}
+	
+	public void cyclePalette(int step) {
+		explorerPanel.cyclePalette(step);
+	}
 }
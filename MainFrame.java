@@ -33,6 +33,14 @@ public class MainFrame extends JFrame implements PropertyChangeListener {
 	
 	private JFormattedTextField iterValueField;
 	private JButton equalizeAxisButton;
+	private JCheckBox metricsBox;
+	
+	// colouring controls
+	private JComboBox<Palette> paletteCombo;
+	private JCheckBox smoothBox;
+	private JCheckBox equalizeBox;
+	private JToggleButton cycleButton;
+	private Timer cycleTimer;
 
 	// format for control display fields
 	private DecimalFormat controlFormat;
@@ -153,16 +161,87 @@ public class MainFrame extends JFrame implements PropertyChangeListener {
 		iterValueField.setColumns(10);
 		iterValueField.addPropertyChangeListener("value", this);
 		
+		// render times and counts over the image
+		metricsBox = new JCheckBox("Metrics", explorerPanel.isShowMetrics());
+		metricsBox.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				explorerPanel.setShowMetrics(metricsBox.isSelected());
+			}
+		});
+		
 		controlIterPane.add(iterLabel);
 		controlIterPane.add(iterValueField);
 		controlIterPane.add(equalizeAxisButton);
+		controlIterPane.add(metricsBox);
+		
+		// colouring, changing it does not compute the fractal again
+		JPanel controlColorPane = new JPanel();
+		
+		paletteCombo = new JComboBox<Palette>(Palette.getPalettes());
+		paletteCombo.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				explorerPanel.setPalette((Palette) paletteCombo.getSelectedItem());
+			}
+		});
+		
+		smoothBox = new JCheckBox("Smooth");
+		smoothBox.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				explorerPanel.setSmooth(smoothBox.isSelected());
+			}
+		});
+		
+		equalizeBox = new JCheckBox("Equalize");
+		equalizeBox.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				explorerPanel.setEqualize(equalizeBox.isSelected());
+			}
+		});
+		
+		// cycle the colours about 60 times a second
+		cycleTimer = new Timer(16, new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				explorerPanel.cyclePalette(1);
+			}
+		});
+		cycleButton = new JToggleButton("Cycle");
+		cycleButton.addActionListener(new ActionListener() {
+			
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if (cycleButton.isSelected())
+					cycleTimer.start();
+				else
+					cycleTimer.stop();
+			}
+		});
+		
+		controlColorPane.add(new JLabel("Palette"));
+		controlColorPane.add(paletteCombo);
+		controlColorPane.add(smoothBox);
+		controlColorPane.add(equalizeBox);
+		controlColorPane.add(cycleButton);
+		
+		JPanel controlBottomPane = new JPanel(new GridLayout(0,1));
+		controlBottomPane.add(controlIterPane);
+		controlBottomPane.add(controlColorPane);
 		
 		// add control panes to buttons pane
 		controlDisplayPane.add(realControlPane);
 		controlDisplayPane.add(imaginaryControlPane);
 		
 		buttonspanel.add(controlDisplayPane, BorderLayout.CENTER);
-		buttonspanel.add(controlIterPane, BorderLayout.SOUTH);
+		buttonspanel.add(controlBottomPane, BorderLayout.SOUTH);
 		
 		// add label/field panes to control panes
 		realControlPane.add(rLabelPane, BorderLayout.CENTER);
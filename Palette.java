@@ -0,0 +1,95 @@
+import java.awt.Color;
+
+
+public class Palette {
+
+	/*
+	 * Colours given to the iteration counts. A palette is a cyclic gradient
+	 * of SIZE colours covering period counts, except the classic one which
+	 * is the formula the explorer always used.
+	 * Counts are given as doubles so smooth colouring and equalization can
+	 * ask for any colour in between.
+	 */
+
+	public static final Palette CLASSIC = new Palette("Classic", null, 256, 0);
+	public static final Palette FIRE = new Palette("Fire", gradient(0x000000, 0x800000, 0xFF4000, 0xFFC000, 0xFFFFA0,
+																	0xFFC000, 0xFF4000, 0x800000), 128, 0x000000);
+	public static final Palette OCEAN = new Palette("Ocean", gradient(0x000428, 0x004E92, 0x00B4DB, 0xE0FFFF,
+																	  0x00B4DB, 0x004E92), 128, 0x000000);
+	public static final Palette GREY = new Palette("Grey", gradient(0x000000, 0xFFFFFF), 64, 0x000000);
+	public static final Palette RAINBOW = new Palette("Rainbow", rainbow(), 256, 0x000000);
+
+	private static final int SIZE = 1024;
+
+	private final String name;
+	private final int[] colors;
+	private final int period;
+	private final int inside;
+
+	private Palette(String name, int[] colors, int period, int inside) {
+		this.name = name;
+		this.colors = colors;
+		this.period = period;
+		this.inside = inside;
+	}
+
+	public static Palette[] getPalettes() {
+		return new Palette[] { CLASSIC, FIRE, OCEAN, GREY, RAINBOW };
+	}
+
+	/* packed RGB colour of a count, the palette repeats every period counts */
+	public int getColor(double count) {
+		if (colors == null) {
+			int iter = (int) Math.floor(count);
+			return (iter | (iter << 21)) & 0xFFFFFF;
+		}
+		int i = (int) Math.floor(count * SIZE / period);
+		return colors[Math.floorMod(i, SIZE)];
+	}
+
+	/* colour of the points that did not escape */
+	public int getInside(int maxIter) {
+		return (colors == null) ? getColor(maxIter) : inside;
+	}
+
+	/* number of counts before the colours repeat */
+	public int getPeriod() {
+		return period;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/* packed RGB colour between a and b, t from 0 (a) to 1 (b) */
+	public static int mix(int a, int b, float t) {
+		int r = (a >> 16) & 0xFF, g = (a >> 8) & 0xFF, bl = a & 0xFF;
+		r += (int)((((b >> 16) & 0xFF) - r) * t);
+		g += (int)((((b >> 8) & 0xFF) - g) * t);
+		bl += (int)(((b & 0xFF) - bl) * t);
+		return (r << 16) | (g << 8) | bl;
+	}
+
+	/* SIZE colours going through the stops evenly and back to the first one */
+	private static int[] gradient(int... stops) {
+		int[] colors = new int[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			float position = (float) i * stops.length / SIZE;
+			int stop = (int) position;
+			colors[i] = mix(stops[stop], stops[(stop + 1) % stops.length], position - stop);
+		}
+		return colors;
+	}
+
+	private static int[] rainbow() {
+		int[] colors = new int[SIZE];
+		for (int i = 0; i < SIZE; i++)
+			colors[i] = Color.HSBtoRGB((float) i / SIZE, 0.8f, 1.0f) & 0xFFFFFF;
+		return colors;
+	}
+}
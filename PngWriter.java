@@ -0,0 +1,140 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+
+public class PngWriter {
+
+	/*
+	 * Writes an 8 bit RGB PNG one row at a time, from the top, so an image
+	 * far too big for a BufferedImage never has to be held in memory.
+	 * Every row is filtered with Sub (each byte minus the one of the pixel
+	 * on its left) which suits the smooth areas of fractals, and the
+	 * deflated stream is cut into IDAT chunks as it comes.
+	 */
+
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	private static final int IDAT_SIZE = 1 << 20; // bytes of compressed data per chunk
+	private static final int FILTER_SUB = 1;
+
+	private final DataOutputStream out;
+	private final int width, height;
+	private final Deflater deflater;
+	private final DeflaterOutputStream data;
+	private final byte[] line; // filter type and the filtered bytes of a row
+	private int rows = 0;
+
+	public PngWriter(OutputStream out, int width, int height) throws IOException {
+		if (width <= 0 || height <= 0 || (long) width * 3 + 1 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Cannot write a " + width + "x" + height + " PNG");
+
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+		this.width = width;
+		this.height = height;
+		line = new byte[1 + 3 * width];
+
+		this.out.write(SIGNATURE);
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8; // bits per sample
+		header[9] = 2; // RGB
+		header[10] = 0; // deflate
+		header[11] = 0; // adaptive filtering
+		header[12] = 0; // not interlaced
+		writeChunk("IHDR", header, header.length);
+
+		deflater = new Deflater(Deflater.BEST_SPEED);
+		data = new DeflaterOutputStream(new IdatStream(), deflater, 1 << 16);
+	}
+
+	/* next row of the image, packed RGB ints */
+	public void writeRow(int[] rgb) throws IOException {
+		if (rows == height)
+			throw new IllegalStateException("All the " + height + " rows have been written");
+
+		line[0] = FILTER_SUB;
+		int left = 0;
+		for (int x = 0, i = 1; x < width; x++, i += 3) {
+			int c = rgb[x];
+			line[i] = (byte) ((c >> 16) - (left >> 16));
+			line[i + 1] = (byte) ((c >> 8) - (left >> 8));
+			line[i + 2] = (byte) (c - left);
+			left = c;
+		}
+		data.write(line);
+		rows++;
+	}
+
+	/* finish the file once every row has been written, and close the stream */
+	public void close() throws IOException {
+		if (rows != height)
+			throw new IllegalStateException("Only " + rows + " of the " + height + " rows have been written");
+
+		data.close(); // the last IDAT chunk
+		deflater.end();
+		writeChunk("IEND", new byte[0], 0);
+		out.close();
+	}
+
+	private void writeChunk(String type, byte[] bytes, int length) throws IOException {
+		byte[] name = type.getBytes(StandardCharsets.US_ASCII);
+		CRC32 crc = new CRC32();
+		crc.update(name);
+		crc.update(bytes, 0, length);
+
+		out.writeInt(length);
+		out.write(name);
+		out.write(bytes, 0, length);
+		out.writeInt((int) crc.getValue());
+	}
+
+	private static void putInt(byte[] b, int offset, int value) {
+		b[offset] = (byte) (value >>> 24);
+		b[offset + 1] = (byte) (value >>> 16);
+		b[offset + 2] = (byte) (value >>> 8);
+		b[offset + 3] = (byte) value;
+	}
+
+	/* compressed data, written out as IDAT chunks of IDAT_SIZE bytes */
+	private class IdatStream extends OutputStream {
+
+		private final byte[] buffer = new byte[IDAT_SIZE];
+		private int size = 0;
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int offset, int length) throws IOException {
+			while (length > 0) {
+				int n = Math.min(length, buffer.length - size);
+				System.arraycopy(b, offset, buffer, size, n);
+				size += n;
+				offset += n;
+				length -= n;
+				if (size == buffer.length)
+					flush();
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (size > 0)
+				writeChunk("IDAT", buffer, size);
+			size = 0;
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
@@ -0,0 +1,333 @@
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+
+public class PosterRender {
+
+	/*
+	 * Renders images too big for memory (50000x50000 is 10 GB of counts):
+	 * the image is computed in strips of one row of tiles, in parallel on
+	 * the workers of a RenderEngine, and the counts go to a memory mapped
+	 * scratch file instead of the heap. An encoder thread follows the strips
+	 * as they are finished and streams their rows, coloured, to a PngWriter.
+	 *
+	 * The scratch file remembers which strips are done, so a render that was
+	 * interrupted carries on from where it stopped when it is started again
+	 * with the same parameters (the PNG itself is written again from the top).
+	 *
+	 * Scratch file: a header with the parameters, one byte per strip set once
+	 * it is on disk, then the counts row by row from dataOffset.
+	 *
+	 * With a RenderFarm the tiles of each strip are computed by its workers
+	 * instead, the ones it fails are computed here.
+	 */
+
+	private static final int STRIP = RenderEngine.TILE_SIZE; // rows per strip
+	private static final long MAGIC = 0x4658504F53545231L; // "FXPOSTR1"
+	private static final int PARAMETERS_SIZE = 1024; // magic and parameters, then the strip flags
+	private static final long PROGRESS_NANOS = 2000000000L; // between two progress lines
+
+	private final int fractal;
+	private final Viewport view;
+	private final int width, height, maxIter;
+	private final double juliaRe, juliaIm;
+	private final Palette palette;
+	private final int strips;
+	private final long dataOffset;
+
+	/* same pixel grid and arithmetic as the renderer */
+	private final RenderFarm.Frame frame;
+	private RenderFarm farm;
+
+	private FileChannel channel;
+	private MappedByteBuffer header;
+
+	/* strips [0, stripsDone) are on disk, guarded by this, the encoder waits on it */
+	private int stripsDone = 0;
+	private IOException encoderFailure;
+
+	public PosterRender(int fractal, Viewport view, int width, int height, int maxIter,
+						double juliaRe, double juliaIm, Palette palette) {
+		if (width <= 0 || height <= 0 || (long) width * STRIP * 4 > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Cannot render a " + width + "x" + height + " poster");
+
+		this.fractal = (fractal == FractalRenderer.TYPE_JULIA) ? FractalRenderer.TYPE_JULIA
+															   : FractalRenderer.TYPE_MANDELBROT;
+		this.view = view;
+		this.width = width;
+		this.height = height;
+		this.maxIter = maxIter;
+		this.juliaRe = juliaRe;
+		this.juliaIm = juliaIm;
+		this.palette = palette;
+		strips = (height + STRIP - 1) / STRIP;
+		// the counts start on a page
+		dataOffset = (PARAMETERS_SIZE + strips + 4095) / 4096 * 4096;
+
+		frame = new RenderFarm.Frame(this.fractal, view, width, height, maxIter, juliaRe, juliaIm);
+	}
+
+	/* compute the strips on the workers of a render farm, null to compute them here */
+	public void setFarm(RenderFarm farm) {
+		this.farm = farm;
+	}
+
+	/*
+	 * Render the poster into output using the scratch file, carrying on
+	 * with a scratch file left by the same render if there is one.
+	 * Progress and the time left are printed on System.err.
+	 */
+	public void render(File scratch, File output, int threads) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(scratch, "rw")) {
+			channel = file.getChannel();
+			int resumed = openScratch(file);
+			if (resumed > 0)
+				System.err.printf("%s: %d of %d strips already rendered%n", scratch, resumed, strips);
+			// the encoder starts with them, they may be all there is
+			synchronized (this) {
+				stripsDone = resumed;
+			}
+
+			Thread encoder = startEncoder(output);
+			RenderEngine engine = new RenderEngine(threads);
+			try {
+				computeStrips(engine, resumed);
+				encoder.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted, run it again to carry on");
+			} finally {
+				engine.shutdown();
+				encoder.interrupt();
+			}
+
+			synchronized (this) {
+				if (encoderFailure != null)
+					throw encoderFailure;
+			}
+		}
+	}
+
+	public PrecisionTier getPrecisionTier() {
+		return frame.getPrecisionTier();
+	}
+
+	/*
+	 * Use the scratch file if it was made for the same poster, start it again otherwise.
+	 * @return the number of strips already done, they are done from the top
+	 */
+	private int openScratch(RandomAccessFile file) throws IOException {
+		byte[] parameters = parameters().getBytes(StandardCharsets.UTF_8);
+		if (parameters.length + 12 > PARAMETERS_SIZE)
+			throw new IllegalArgumentException("View too long for the scratch file");
+
+		long length = dataOffset + (long) width * height * 4;
+		boolean same = file.length() == length;
+		if (same) {
+			header = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataOffset);
+			same = header.getLong(0) == MAGIC && header.getInt(8) == parameters.length;
+			for (int i = 0; same && i < parameters.length; i++)
+				same = header.get(12 + i) == parameters[i];
+		}
+
+		if (!same) {
+			// sparse until the strips are written
+			file.setLength(0);
+			file.setLength(length);
+			header = channel.map(FileChannel.MapMode.READ_WRITE, 0, dataOffset);
+			header.putLong(0, MAGIC);
+			header.putInt(8, parameters.length);
+			for (int i = 0; i < parameters.length; i++)
+				header.put(12 + i, parameters[i]);
+			header.force();
+		}
+
+		int done = 0;
+		while (done < strips && header.get(PARAMETERS_SIZE + done) != 0)
+			done++;
+		return done;
+	}
+
+	/* what the counts depend on, a scratch file with other ones cannot be used */
+	private String parameters() {
+		return fractal + " " + width + "x" + height + " " + maxIter + " " + view.getCenterRe() + " "
+			   + view.getCenterIm() + " " + view.getWidth() + " " + view.getHeight() + " "
+			   + juliaRe + " " + juliaIm + " " + frame.getPrecisionTier() + " " + STRIP;
+	}
+
+	private MappedByteBuffer mapStrip(int strip, FileChannel.MapMode mode) throws IOException {
+		int rows = Math.min(STRIP, height - strip * STRIP);
+		return channel.map(mode, dataOffset + (long) strip * STRIP * width * 4, (long) rows * width * 4);
+	}
+
+	private void computeStrips(RenderEngine engine, int first) throws IOException {
+		long start = System.nanoTime();
+		long lastReport = start;
+		long pixels = 0; // computed by this run
+
+		for (int strip = first; strip < strips; strip++) {
+			synchronized (this) {
+				if (encoderFailure != null)
+					return;
+			}
+
+			final int y0 = strip * STRIP;
+			final int rows = Math.min(STRIP, height - y0);
+			MappedByteBuffer map = mapStrip(strip, FileChannel.MapMode.READ_WRITE);
+			final IntBuffer counts = map.asIntBuffer();
+
+			boolean rendered;
+			if (farm != null) {
+				rendered = farmStrip(engine, counts, y0, rows);
+			} else {
+				rendered = engine.render(width, rows, new RenderEngine.TilePainter() {
+
+					@Override
+					public void paintTile(int x, int y, int w, int h) {
+						computeTile(counts, x, y0 + y, w, h, y * width + x);
+					}
+
+					@Override
+					public void tileDone(int x, int y, int w, int h, double percent) {
+					}
+				});
+			}
+			if (!rendered)
+				throw new IOException("Interrupted, run it again to carry on");
+
+			// on disk before it is marked done, so a killed render never resumes from missing counts
+			map.force();
+			header.put(PARAMETERS_SIZE + strip, (byte) 1);
+			header.force();
+			synchronized (this) {
+				stripsDone = strip + 1;
+				notifyAll();
+			}
+
+			pixels += (long) rows * width;
+			long now = System.nanoTime();
+			if (now - lastReport >= PROGRESS_NANOS || strip == strips - 1) {
+				lastReport = now;
+				double seconds = (now - start) / 1e9;
+				long left = (long) (strips - strip - 1) * STRIP * width;
+				System.err.printf("%d/%d strips, %.1f%%, %.2f Mpixels/s, %s left%n", strip + 1, strips,
+								  100.0 * (strip + 1) / strips, pixels / seconds / 1e6,
+								  duration(left * seconds / pixels));
+			}
+		}
+	}
+
+	/* counts of a w x h tile whose top left pixel is (x0, y0) in the poster, at index in counts */
+	private void computeTile(IntBuffer counts, int x0, int y0, int w, int h, int index) {
+		int[] tile = new int[w * h];
+		frame.computeTile(x0, y0, w, h, tile);
+		putTile(counts, tile, w, h, index);
+	}
+
+	private void putTile(IntBuffer counts, int[] tile, int w, int h, int index) {
+		for (int y = 0; y < h; y++, index += width)
+			counts.put(index, tile, y * w, w);
+	}
+
+	/*
+	 * Every tile of the strip at y0 through the farm, the ones it fails computed here.
+	 * The next strip is only given once this one is done, which leaves the workers
+	 * of the farm waiting on the last tiles of each strip but nowhere else.
+	 * @return false if it was interrupted
+	 */
+	private boolean farmStrip(RenderEngine engine, final IntBuffer counts, final int y0, int rows) {
+		final List<RenderFarm.Tile> tiles = new ArrayList<RenderFarm.Tile>();
+		try {
+			for (int x = 0; x < width; x += STRIP)
+				tiles.add(farm.submit(frame, x, y0, Math.min(STRIP, width - x), rows));
+			for (RenderFarm.Tile tile : tiles)
+				tile.await();
+		} catch (InterruptedException e) {
+			farm.cancel(tiles);
+			return false;
+		}
+
+		// the tiles that failed on the engine
+		return engine.render(width, rows, new RenderEngine.TilePainter() {
+
+			@Override
+			public void paintTile(int x, int y, int w, int h) {
+				int[] tile = tiles.get(x / STRIP).getCounts();
+				if (tile != null)
+					putTile(counts, tile, w, h, y * width + x);
+				else
+					computeTile(counts, x, y0 + y, w, h, y * width + x);
+			}
+
+			@Override
+			public void tileDone(int x, int y, int w, int h, double percent) {
+			}
+		});
+	}
+
+	/* colour and write the strips as they are done */
+	private Thread startEncoder(final File output) {
+		Thread encoder = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					encode(output);
+				} catch (IOException e) {
+					synchronized (PosterRender.this) {
+						encoderFailure = e;
+					}
+				} catch (InterruptedException e) {
+					// the render stopped
+				}
+			}
+		}, "poster-encoder");
+		encoder.start();
+		return encoder;
+	}
+
+	private void encode(File output) throws IOException, InterruptedException {
+		int[] lut = new int[maxIter + 1];
+		for (int i = 0; i < maxIter; i++)
+			lut[i] = palette.getColor(i);
+		lut[maxIter] = palette.getInside(maxIter);
+
+		PngWriter png = new PngWriter(new BufferedOutputStream(new FileOutputStream(output), 1 << 16), width, height);
+		int[] counts = new int[width];
+		int[] rgb = new int[width];
+		for (int strip = 0; strip < strips; strip++) {
+			synchronized (this) {
+				while (stripsDone <= strip)
+					wait();
+			}
+
+			IntBuffer map = mapStrip(strip, FileChannel.MapMode.READ_ONLY).asIntBuffer();
+			int rows = Math.min(STRIP, height - strip * STRIP);
+			for (int y = 0; y < rows; y++) {
+				map.get(y * width, counts, 0, width);
+				for (int x = 0; x < width; x++)
+					rgb[x] = lut[Math.min(counts[x], maxIter)];
+				png.writeRow(rgb);
+			}
+		}
+		png.close();
+	}
+
+	private static String duration(double seconds) {
+		long s = Math.round(seconds);
+		if (s >= 3600)
+			return String.format("%dh%02dm", s / 3600, s % 3600 / 60);
+		if (s >= 60)
+			return String.format("%dm%02ds", s / 60, s % 60);
+		return s + "s";
+	}
+}
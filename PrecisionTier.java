@@ -0,0 +1,42 @@
+public enum PrecisionTier {
+
+	/*
+	 * Arithmetic used to render a view, picked from the size of its pixels:
+	 * plain doubles while they are precise enough, then double-double,
+	 * then perturbation around a BigDecimal reference orbit.
+	 */
+
+	DOUBLE("double"),
+	DOUBLE_DOUBLE("double-double"),
+	PERTURBATION("perturbation");
+
+	/*
+	 * pixels smaller than this many ulps of the coordinates cannot be told apart,
+	 * it also covers the few bits double-double loses to rounding
+	 */
+	private static final double MIN_ULPS = 1024.0;
+
+	private final String label;
+
+	private PrecisionTier(String label) {
+		this.label = label;
+	}
+
+	public static PrecisionTier forView(Viewport view, int pixelWidth, int pixelHeight) {
+		double magnitude = Math.max(Math.max(Math.abs(view.getXmin()), Math.abs(view.getXmax())),
+									Math.max(Math.abs(view.getYmin()), Math.abs(view.getYmax())));
+		double spacing = Math.min(view.getWidth() / pixelWidth, view.getHeight() / pixelHeight);
+
+		double ulp = Math.ulp(magnitude);
+		if (spacing >= MIN_ULPS * ulp)
+			return DOUBLE;
+		// the ulp of the same coordinates with the PRECISION_BITS of double-double instead of 53
+		if (spacing >= MIN_ULPS * Math.scalb(ulp, 53 - DoubleDouble.PRECISION_BITS))
+			return DOUBLE_DOUBLE;
+		return PERTURBATION;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+}
@@ -0,0 +1,155 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.atomic.LongAdder;
+
+
+public class ReferenceOrbit implements DeltaKernel {
+
+	/*
+	 * Perturbation for deep zooms.
+	 * The orbit Z of one reference point C is computed once in BigDecimal,
+	 * every pixel c = C + dc then only iterates its difference with it
+	 * in doubles: dz' = 2 Z dz + dz^2 + dc, and z = Z + dz.
+	 *
+	 * Glitches (dz growing past the orbit it is relative to) are avoided
+	 * by rebasing: when |z| < |dz| or the reference has escaped, the pixel
+	 * continues from z against the start of the reference orbit.
+	 * If the reference escapes early another one is picked in the view.
+	 */
+
+	/* side of the grid of candidates tried when the reference escapes */
+	private static final int CANDIDATES = 5;
+
+	private static final LongAdder rebases = new LongAdder();
+	private static final LongAdder references = new LongAdder();
+
+	private final double[] zr, zi; // Z_0 .. Z_length
+	private final int length; // iterations before the reference escaped, or maxIter
+	private final double offsetRe, offsetIm; // reference point relative to the centre of the view
+
+	private ReferenceOrbit(double[] zr, double[] zi, int length, double offsetRe, double offsetIm) {
+		this.zr = zr;
+		this.zi = zi;
+		this.length = length;
+		this.offsetRe = offsetRe;
+		this.offsetIm = offsetIm;
+	}
+
+	/* reference orbit for a view, re-referenced if the centre escapes before maxIter */
+	public static ReferenceOrbit forView(Viewport view, int pixelWidth, int pixelHeight, int maxIter) {
+		MathContext mc = view.precision(pixelWidth);
+
+		ReferenceOrbit ref = compute(view, 0.0, 0.0, maxIter, mc);
+		if (ref.length >= maxIter)
+			return ref;
+
+		// try a grid of points in the view and use the one that lasts the longest
+		double bestRe = 0.0, bestIm = 0.0;
+		int best = ref.length;
+
+		for (int i = 0; i < CANDIDATES; i++) {
+			for (int j = 0; j < CANDIDATES; j++) {
+				double re = ((i + 0.5) / CANDIDATES - 0.5) * view.getWidth();
+				double im = ((j + 0.5) / CANDIDATES - 0.5) * view.getHeight();
+				int iter = ref.iterate(re, im, maxIter);
+				if (iter > best) {
+					best = iter;
+					bestRe = re;
+					bestIm = im;
+				}
+			}
+		}
+
+		if (best == ref.length)
+			return ref;
+		return compute(view, bestRe, bestIm, maxIter, mc);
+	}
+
+	private static ReferenceOrbit compute(Viewport view, double offsetRe, double offsetIm,
+										  int maxIter, MathContext mc) {
+		references.increment();
+
+		BigDecimal cr = view.getCenterRe().add(new BigDecimal(offsetRe), mc);
+		BigDecimal ci = view.getCenterIm().add(new BigDecimal(offsetIm), mc);
+		BigDecimal re = BigDecimal.ZERO;
+		BigDecimal im = BigDecimal.ZERO;
+
+		double[] zr = new double[maxIter + 1];
+		double[] zi = new double[maxIter + 1];
+		int n = 0;
+
+		while (n < maxIter) {
+			// (a+ib)^2 + c = a^2 - b^2 + cr + (2ab + ci)i
+			BigDecimal re2 = re.multiply(re, mc);
+			BigDecimal im2 = im.multiply(im, mc);
+			im = re.multiply(im, mc).multiply(BigDecimal.valueOf(2)).add(ci, mc);
+			re = re2.subtract(im2).add(cr, mc);
+			n++;
+
+			zr[n] = re.doubleValue();
+			zi[n] = im.doubleValue();
+			if (zr[n] * zr[n] + zi[n] * zi[n] >= EscapeTime.BAILOUT_SQUARED)
+				break;
+		}
+
+		return new ReferenceOrbit(zr, zi, n, offsetRe, offsetIm);
+	}
+
+	/*
+	 * Iteration count of the point at (dcr, dci) from the centre of the view,
+	 * same result as EscapeTime.mandelbrot would give with exact coordinates
+	 */
+	@Override
+	public int iterate(double dcr, double dci, int maxIter) {
+		dcr -= offsetRe;
+		dci -= offsetIm;
+
+		double dzr = 0.0, dzi = 0.0;
+		int m = 0; // position in the reference orbit
+		int count = 0;
+		int rebased = 0;
+
+		while (count < maxIter) {
+			double r = zr[m], i = zi[m];
+
+			// dz' = 2 Z dz + dz^2 + dc
+			double ndzr = 2.0 * (r * dzr - i * dzi) + dzr * dzr - dzi * dzi + dcr;
+			double ndzi = 2.0 * (r * dzi + i * dzr) + 2.0 * dzr * dzi + dci;
+			dzr = ndzr;
+			dzi = ndzi;
+			m++;
+			count++;
+
+			// full value of z
+			double fr = zr[m] + dzr;
+			double fi = zi[m] + dzi;
+			double mag = fr * fr + fi * fi;
+
+			if (mag >= EscapeTime.BAILOUT_SQUARED)
+				break;
+
+			if (mag < dzr * dzr + dzi * dzi || m == length) {
+				dzr = fr;
+				dzi = fi;
+				m = 0;
+				rebased++;
+			}
+		}
+
+		if (rebased > 0)
+			rebases.add(rebased);
+		return count;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public static long getRebases() {
+		return rebases.sum();
+	}
+
+	public static long getReferences() {
+		return references.sum();
+	}
+}
@@ -0,0 +1,310 @@
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+public class RenderEngine {
+
+	/*
+	 * Splits a frame into square tiles and computes them on the workers
+	 * of a RenderScheduler, shared with the other engines unless it was
+	 * given a number of workers. Every finished tile is handed back
+	 * to the TilePainter so it can be shown before the whole frame is done.
+	 *
+	 * Every render belongs to a generation, cancel() starts a new one and
+	 * the workers of older renders stop before their next tile. The
+	 * painter can check isCancelled(generation) to stop within a tile.
+	 */
+
+	public static final int TILE_SIZE = 64;
+
+	public interface TilePainter {
+		/* compute and draw every pixel of the given rectangle */
+		void paintTile(int x, int y, int w, int h);
+
+		/* called once a tile has been painted, percent is the progress of the frame */
+		void tileDone(int x, int y, int w, int h, double percent);
+	}
+
+	public interface RowTask {
+		/* work on the rows [from, to) */
+		void run(int from, int to);
+	}
+
+	/* rows given to each task by forRows */
+	private static final int ROWS_PER_TASK = 16;
+
+	private final RenderScheduler scheduler;
+	private final boolean ownScheduler;
+
+	private final AtomicLong generation = new AtomicLong();
+	private volatile int priority = RenderScheduler.PRIORITY_INTERACTIVE;
+	private volatile Rectangle visibleArea; // null for the whole frame
+	private final RenderMetrics metrics;
+
+	/* on the workers shared by the program */
+	public RenderEngine() {
+		scheduler = RenderScheduler.getDefault();
+		ownScheduler = false;
+		metrics = new RenderMetrics(scheduler.getWorkers());
+	}
+
+	/* on workers of its own */
+	public RenderEngine(int parallelism) {
+		scheduler = new RenderScheduler(parallelism);
+		ownScheduler = true;
+		metrics = new RenderMetrics(scheduler.getWorkers());
+	}
+
+	/* number of workers, can be set with -Dfractal.threads=N */
+	public static int defaultParallelism() {
+		int n = Integer.getInteger("fractal.threads", Runtime.getRuntime().availableProcessors());
+		return Math.max(1, n);
+	}
+
+	/*
+	 * Render a width x height frame, blocks until every tile is done
+	 * or the render has been cancelled.
+	 * @return true if the whole frame was rendered
+	 */
+	public boolean render(int width, int height, TilePainter painter) {
+		return render(width, height, 0, 0, painter);
+	}
+
+	/*
+	 * Same with the grid of tiles shifted, the pixel (0, 0) is at (offsetX, offsetY)
+	 * in its tile, so the tiles on the edges of the frame are only partly drawn
+	 */
+	public boolean render(int width, int height, int offsetX, int offsetY, TilePainter painter) {
+		return render(width, height, offsetX, offsetY, null, painter);
+	}
+
+	/*
+	 * Same with the tiles started in the given order, order holds the
+	 * row major indices of the tiles, null for tileOrder()
+	 */
+	public boolean render(int width, int height, int offsetX, int offsetY, int[] order, TilePainter painter) {
+		return render(width, height, offsetX, offsetY, order, painter, generation.get());
+	}
+
+	/*
+	 * Same as part of the given generation, it does nothing
+	 * if it has already been cancelled
+	 */
+	public boolean render(int width, int height, int offsetX, int offsetY, int[] order, TilePainter painter,
+						  long job) {
+		return render(width, height, offsetX, offsetY, order, painter, job, priority);
+	}
+
+	/* same with the priority given instead of the one of the engine */
+	public boolean render(int width, int height, int offsetX, int offsetY, int[] order, TilePainter painter,
+						  long job, int priority) {
+		if (isCancelled(job))
+			return false;
+		if (width <= 0 || height <= 0)
+			return true;
+
+		if (order == null)
+			order = tileOrder(width, height, offsetX, offsetY);
+
+		return scheduler.run(new FrameJob(painter, width, height, offsetX, offsetY, order, job, priority))
+				&& !isCancelled(job);
+	}
+
+	/*
+	 * Order the tiles are started in when none is given: the ones in the visible
+	 * area first, each group from the centre of the visible area outwards in a
+	 * spiral, where the eye looks first.
+	 * @return the row major indices of the tiles
+	 */
+	public int[] tileOrder(int width, int height, int offsetX, int offsetY) {
+		final int cols = (offsetX + width + TILE_SIZE - 1) / TILE_SIZE;
+		int rows = (offsetY + height + TILE_SIZE - 1) / TILE_SIZE;
+
+		Rectangle area = visibleArea;
+		final Rectangle visible = (area != null) ? area.intersection(new Rectangle(0, 0, width, height)) : null;
+		final Rectangle focus = (visible != null && !visible.isEmpty()) ? visible : new Rectangle(0, 0, width, height);
+
+		// centre of the focus in tiles
+		final double cx = (focus.getCenterX() + offsetX) / TILE_SIZE - 0.5;
+		final double cy = (focus.getCenterY() + offsetY) / TILE_SIZE - 0.5;
+
+		Integer[] tiles = new Integer[cols * rows];
+		for (int i = 0; i < tiles.length; i++)
+			tiles[i] = i;
+		Arrays.sort(tiles, new Comparator<Integer>() {
+
+			@Override
+			public int compare(Integer a, Integer b) {
+				boolean va = isIn(a), vb = isIn(b);
+				if (va != vb)
+					return va ? -1 : 1;
+				// ring around the centre, then the angle in the ring
+				int c = Long.compare(ring(a), ring(b));
+				return (c != 0) ? c : Double.compare(angle(a), angle(b));
+			}
+
+			private boolean isIn(int tile) {
+				return focus.intersects((tile % cols) * TILE_SIZE - offsetX, (tile / cols) * TILE_SIZE - offsetY,
+										TILE_SIZE, TILE_SIZE);
+			}
+
+			private long ring(int tile) {
+				return Math.round(Math.max(Math.abs(tile % cols - cx), Math.abs(tile / cols - cy)));
+			}
+
+			private double angle(int tile) {
+				return Math.atan2(tile / cols - cy, tile % cols - cx);
+			}
+		});
+
+		int[] order = new int[tiles.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = tiles[i];
+		return order;
+	}
+
+	/*
+	 * Run task on the rows [0, rows) in parallel and wait for it. This is for
+	 * quick passes over a finished frame (colouring) so it is always interactive:
+	 * the calling thread takes rows too and the workers take them before any tile
+	 * of a background render. It is not cancelled with the renders.
+	 */
+	public void forRows(int rows, RowTask task) {
+		scheduler.run(new RowJob(task, rows));
+	}
+
+	/*
+	 * Stop the renders started so far, as soon as their tiles notice it
+	 * @return the new generation
+	 */
+	public long cancel() {
+		long next = generation.incrementAndGet();
+		// the render waiting for the frame returns without waiting for its turn
+		scheduler.wake();
+		return next;
+	}
+
+	/* the current generation, a render started now belongs to it */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/* cheap enough to be checked for every row */
+	public boolean isCancelled(long job) {
+		return job != generation.get();
+	}
+
+	/* priority of the renders, RenderScheduler.PRIORITY_INTERACTIVE by default */
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
+
+	public int getPriority() {
+		return priority;
+	}
+
+	/* part of the frame seen on screen, started first, null for the whole frame */
+	public void setVisibleArea(Rectangle area) {
+		visibleArea = (area != null) ? new Rectangle(area) : null;
+	}
+
+	public int getParallelism() {
+		return scheduler.getWorkers();
+	}
+
+	/* timings of the tiles, and of the frames the renderer reports */
+	public RenderMetrics getMetrics() {
+		return metrics;
+	}
+
+	/* the shared workers are left running for the other engines */
+	public void shutdown() {
+		cancel();
+		if (ownScheduler)
+			scheduler.shutdown();
+	}
+
+	/* a frame given to the scheduler, one tile at a time in the order given */
+	private class FrameJob extends RenderScheduler.Job {
+
+		private final TilePainter painter;
+		private final int width, height, offsetX, offsetY, cols;
+		private final int[] order;
+		private final long job;
+		private final AtomicInteger pixelsDone = new AtomicInteger();
+
+		FrameJob(TilePainter painter, int width, int height, int offsetX, int offsetY,
+				 int[] order, long job, int priority) {
+			super(priority, order.length);
+			this.painter = painter;
+			this.width = width;
+			this.height = height;
+			this.offsetX = offsetX;
+			this.offsetY = offsetY;
+			this.cols = (offsetX + width + TILE_SIZE - 1) / TILE_SIZE;
+			this.order = order;
+			this.job = job;
+		}
+
+		@Override
+		protected boolean isCancelled() {
+			return RenderEngine.this.isCancelled(job);
+		}
+
+		@Override
+		protected void runTile(int i) {
+			if (isCancelled())
+				return;
+
+			// clip the tile to the frame
+			int tile = order[i];
+			int tx = (tile % cols) * TILE_SIZE - offsetX;
+			int ty = (tile / cols) * TILE_SIZE - offsetY;
+			int x = Math.max(tx, 0);
+			int y = Math.max(ty, 0);
+			int w = Math.min(tx + TILE_SIZE, width) - x;
+			int h = Math.min(ty + TILE_SIZE, height) - y;
+
+			RenderMetrics.TileEvent event = RenderMetrics.beginTile();
+			long start = System.nanoTime();
+			painter.paintTile(x, y, w, h);
+			long nanos = System.nanoTime() - start;
+
+			// the tile may have been left half done
+			boolean cancelled = isCancelled();
+			RenderMetrics.endTile(event, x, y, w, h, job, cancelled);
+			if (cancelled)
+				return;
+			metrics.tileDone(nanos);
+
+			int done = pixelsDone.addAndGet(w * h);
+			painter.tileDone(x, y, w, h, Math.floor(100.0 * done / ((long) width * height)));
+		}
+	}
+
+	/* a forRows pass given to the scheduler, ROWS_PER_TASK rows at a time */
+	private static class RowJob extends RenderScheduler.Job {
+
+		private final RowTask task;
+		private final int rows;
+
+		RowJob(RowTask task, int rows) {
+			super(RenderScheduler.PRIORITY_INTERACTIVE, (rows + ROWS_PER_TASK - 1) / ROWS_PER_TASK);
+			this.task = task;
+			this.rows = rows;
+		}
+
+		@Override
+		protected boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		protected void runTile(int i) {
+			task.run(i * ROWS_PER_TASK, Math.min((i + 1) * ROWS_PER_TASK, rows));
+		}
+	}
+}
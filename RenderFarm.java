@@ -0,0 +1,760 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+public class RenderFarm {
+
+	/*
+	 * Coordinator of a render farm: tiles are computed by FarmWorker processes,
+	 * on this machine or others, instead of by the workers of this program.
+	 * submit() queues a tile and returns at once, the tiles queued are sent in
+	 * batches to whichever worker has room for them, and each worker answers
+	 * with the counts of a tile as soon as it is done.
+	 *
+	 * - backpressure: a worker never has more than TILES_PER_THREAD tiles per
+	 *   thread sent to it, and submit() blocks while MAX_QUEUED tiles are waiting
+	 * - work stealing: a worker with nothing left to do takes the last tile
+	 *   waiting on the busiest worker, which is told to drop it if not started,
+	 *   or computes too a tile running for more than STRAGGLER_MILLIS elsewhere
+	 * - failures: the tiles of a worker whose connection breaks are queued again
+	 *   for the others, a tile failing MAX_ATTEMPTS times or with no worker left
+	 *   is failed and the caller computes it itself
+	 *
+	 * Protocol, big endian both ways, both ends first send MAGIC and VERSION
+	 * and the worker then its number of threads:
+	 *   FRAME id parameters                     a frame the next tiles belong to, see Frame.write
+	 *   BATCH frameId count (tileId x y w h)*   tiles to compute, in this order
+	 *   CANCEL tileId                           drop the tile if it did not start
+	 *   RESULT tileId length bytes              from the worker, counts of the tile row by row,
+	 *                                           each minus the one on its left, deflated
+	 *   FAILED tileId message                   from the worker
+	 */
+
+	static final int MAGIC = 0x46584652; // "FXFR"
+	static final int VERSION = 1;
+	static final byte FRAME = 1, BATCH = 2, CANCEL = 3, RESULT = 4, FAILED = 5;
+
+	/* frames both ends remember, the oldest is forgotten past it on both */
+	static final int FRAMES_KEPT = 16;
+
+	private static final int TILES_PER_THREAD = 3; // sent to a worker, one running and the rest waiting there
+	private static final int MAX_BATCH = 64; // tiles per message
+	private static final int MAX_QUEUED = 4096; // submit() waits past it
+	private static final int MAX_ATTEMPTS = 3;
+	private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+	private static final long STRAGGLER_MILLIS = 5000; // a worker may have hung
+	/* largest frame a worker accepts, maxIter sizes the reference orbit of a deep frame */
+	static final int MAX_SIZE = 1 << 24;
+	static final int MAX_ITER = 1 << 24;
+
+	private static final AtomicInteger frameIds = new AtomicInteger();
+
+	private static RenderFarm defaultFarm;
+	private static boolean defaultOpened = false;
+
+	/* guarded by this */
+	private final ArrayDeque<Tile> queue = new ArrayDeque<Tile>();
+	private final List<Worker> workers = new ArrayList<Worker>();
+	private final Map<Long, Tile> active = new HashMap<Long, Tile>(); // queued or sent, not done yet
+	private long nextTile = 0;
+	private boolean closed = false;
+	private long stolen = 0, retried = 0;
+
+	/*
+	 * What a worker needs to compute the tiles of a frame, the same pixel
+	 * grid and arithmetic as FractalRenderer so the counts are the same.
+	 */
+	public static class Frame {
+
+		final int id = frameIds.incrementAndGet();
+		final int fractal;
+		final Viewport view;
+		final int width, height, maxIter;
+		final double juliaRe, juliaIm;
+
+		private final PrecisionTier tier;
+		private final double spacingX, spacingY;
+		private final double originX, originY;
+		private DeltaKernel deepKernel; // made the first time it is needed, guarded by this
+
+		public Frame(int fractal, Viewport view, int width, int height, int maxIter, double juliaRe, double juliaIm) {
+			this.fractal = (fractal == FractalRenderer.TYPE_JULIA) ? FractalRenderer.TYPE_JULIA
+																   : FractalRenderer.TYPE_MANDELBROT;
+			this.view = view;
+			this.width = width;
+			this.height = height;
+			this.maxIter = maxIter;
+			this.juliaRe = juliaRe;
+			this.juliaIm = juliaIm;
+
+			spacingX = view.getWidth() / width;
+			spacingY = view.getHeight() / height;
+			originX = Math.rint(view.getXmin() / spacingX);
+			originY = Math.rint(view.getYmax() / spacingY);
+
+			// the julia set cannot be zoomed so it always uses doubles
+			tier = (this.fractal == FractalRenderer.TYPE_MANDELBROT) ? PrecisionTier.forView(view, width, height)
+																	  : PrecisionTier.DOUBLE;
+		}
+
+		public PrecisionTier getPrecisionTier() {
+			return tier;
+		}
+
+		private synchronized DeltaKernel getDeepKernel() {
+			if (deepKernel == null && tier != PrecisionTier.DOUBLE)
+				deepKernel = (tier == PrecisionTier.DOUBLE_DOUBLE) ? new DoubleDouble(view)
+																   : ReferenceOrbit.forView(view, width, height, maxIter);
+			return deepKernel;
+		}
+
+		/* counts of the w x h tile whose top left pixel is (x0, y0), row by row in counts */
+		public void computeTile(int x0, int y0, int w, int h, int[] counts) {
+			int[] row = new int[w];
+			double[] re = new double[w];
+			for (int i = 0; i < w; i++)
+				re[i] = (originX + x0 + i) * spacingX;
+
+			DeltaKernel deep = getDeepKernel();
+			RowKernel kernel = EscapeTime.getRowKernel();
+			for (int y = y0; y < y0 + h; y++) {
+				if (deep != null) {
+					// offsets from the centre of the view, like the renderer
+					double dim = (height / 2.0 - y) * view.getHeight() / height;
+					for (int i = 0; i < w; i++)
+						row[i] = deep.iterate((x0 + i - width / 2.0) * view.getWidth() / width, dim, maxIter);
+				} else if (fractal == FractalRenderer.TYPE_MANDELBROT) {
+					kernel.mandelbrot(re, (originY - y) * spacingY, w, maxIter, row, null);
+				} else {
+					kernel.julia(re, (originY - y) * spacingY, w, juliaRe, juliaIm, maxIter, row, null);
+				}
+				System.arraycopy(row, 0, counts, (y - y0) * w, w);
+			}
+		}
+
+		/* the parameters, the id goes before them */
+		void write(DataOutputStream out) throws IOException {
+			out.writeByte(fractal);
+			out.writeInt(width);
+			out.writeInt(height);
+			out.writeInt(maxIter);
+			out.writeUTF(view.getCenterRe().toString());
+			out.writeUTF(view.getCenterIm().toString());
+			out.writeDouble(view.getWidth());
+			out.writeDouble(view.getHeight());
+			out.writeDouble(juliaRe);
+			out.writeDouble(juliaIm);
+		}
+
+		/* a frame written by write(), it gets an id of its own */
+		static Frame read(DataInputStream in) throws IOException {
+			int fractal = in.readByte();
+			int width = in.readInt();
+			int height = in.readInt();
+			int maxIter = in.readInt();
+			Viewport view = new Viewport(new BigDecimal(in.readUTF()), new BigDecimal(in.readUTF()),
+										 in.readDouble(), in.readDouble());
+			double juliaRe = in.readDouble();
+			double juliaIm = in.readDouble();
+			if (fractal != FractalRenderer.TYPE_MANDELBROT && fractal != FractalRenderer.TYPE_JULIA)
+				throw new IOException("Bad fractal " + fractal);
+			if (width <= 0 || height <= 0 || width > MAX_SIZE || height > MAX_SIZE || maxIter <= 0 || maxIter > MAX_ITER)
+				throw new IOException("Bad frame " + width + "x" + height + " " + maxIter);
+			if (!(view.getWidth() > 0) || !(view.getHeight() > 0) || Double.isInfinite(view.getWidth())
+				|| Double.isInfinite(view.getHeight()))
+				throw new IOException("Bad view " + view.getWidth() + "x" + view.getHeight());
+			return new Frame(fractal, view, width, height, maxIter, juliaRe, juliaIm);
+		}
+	}
+
+	/* a tile given to the farm, the fields but the counts are guarded by the farm */
+	public static class Tile {
+
+		final long id;
+		final Frame frame;
+		final int x, y, w, h;
+		private Worker owner; // sent to, null while queued
+		private long sentAt;
+		private int attempts = 0;
+
+		/* guarded by this */
+		private boolean finished = false;
+		private int[] counts; // null if it failed or was cancelled
+
+		Tile(long id, Frame frame, int x, int y, int w, int h) {
+			this.id = id;
+			this.frame = frame;
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+		}
+
+		/* wait until it is finished */
+		public synchronized void await() throws InterruptedException {
+			while (!finished)
+				wait();
+		}
+
+		/* @return true once it is finished, false if it still is not after millis */
+		public synchronized boolean await(long millis) throws InterruptedException {
+			long end = System.currentTimeMillis() + millis;
+			long left;
+			while (!finished && (left = end - System.currentTimeMillis()) > 0)
+				wait(left);
+			return finished;
+		}
+
+		/* counts of the tile row by row once finished, null if the farm could not compute it */
+		public synchronized int[] getCounts() {
+			return counts;
+		}
+
+		public int getX() {
+			return x;
+		}
+
+		public int getY() {
+			return y;
+		}
+
+		public int getWidth() {
+			return w;
+		}
+
+		public int getHeight() {
+			return h;
+		}
+
+		private synchronized void finish(int[] counts) {
+			this.counts = counts;
+			finished = true;
+			notifyAll();
+		}
+	}
+
+	/* connection to a FarmWorker, a thread sending batches and one reading the results */
+	private class Worker {
+
+		final String name;
+		final Socket socket;
+		final DataOutputStream out;
+		final DataInputStream in;
+		final int threads;
+
+		/* guarded by the farm */
+		final LinkedHashMap<Long, Tile> sent = new LinkedHashMap<Long, Tile>(); // oldest first
+		final ArrayList<Long> cancels = new ArrayList<Long>();
+		final LinkedHashMap<Integer, Frame> frames = new LinkedHashMap<Integer, Frame>(); // the worker knows, oldest first
+		boolean dead = false;
+		long tilesDone = 0;
+
+		Worker(String address) throws IOException {
+			name = address;
+			int colon = address.lastIndexOf(':');
+			if (colon < 0)
+				throw new IOException("no port");
+			int port;
+			try {
+				port = Integer.parseInt(address.substring(colon + 1));
+			} catch (NumberFormatException e) {
+				port = -1;
+			}
+			if (port < 0 || port > 65535)
+				throw new IOException("bad port");
+
+			socket = new Socket();
+			socket.connect(new InetSocketAddress(address.substring(0, colon), port), CONNECT_TIMEOUT_MILLIS);
+			socket.setTcpNoDelay(true);
+			out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+			in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.flush();
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				socket.close();
+				throw new IOException(address + " is not a farm worker of this version");
+			}
+			threads = in.readInt();
+		}
+
+		void start() {
+			Thread sender = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						send();
+					} catch (IOException e) {
+						lost(Worker.this, e);
+					} catch (InterruptedException e) {
+						// closed
+					}
+				}
+			}, "farm-send-" + name);
+			Thread receiver = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						receive();
+					} catch (IOException | DataFormatException e) {
+						lost(Worker.this, e);
+					}
+				}
+			}, "farm-receive-" + name);
+			sender.setDaemon(true);
+			receiver.setDaemon(true);
+			sender.start();
+			receiver.start();
+		}
+
+		private void send() throws IOException, InterruptedException {
+			ArrayList<Tile> batch = new ArrayList<Tile>();
+			ArrayList<Long> cancelled = new ArrayList<Long>();
+			while (true) {
+				batch.clear();
+				cancelled.clear();
+				Frame frame;
+				boolean known;
+				synchronized (RenderFarm.this) {
+					// woken up now and then to look for stragglers
+					while (!dead && !closed && cancels.isEmpty() && !takeBatch(this, batch))
+						RenderFarm.this.wait(STRAGGLER_MILLIS);
+					if (dead || closed)
+						return;
+					// room in the queue for submit()
+					RenderFarm.this.notifyAll();
+					cancelled.addAll(cancels);
+					cancels.clear();
+
+					// both ends forget the oldest frame the same way
+					frame = batch.isEmpty() ? null : batch.get(0).frame;
+					known = frame == null || frames.containsKey(frame.id);
+					if (!known) {
+						frames.put(frame.id, frame);
+						if (frames.size() > FRAMES_KEPT)
+							frames.remove(frames.keySet().iterator().next());
+					}
+				}
+
+				for (long id : cancelled) {
+					out.writeByte(CANCEL);
+					out.writeLong(id);
+				}
+				if (!known) {
+					out.writeByte(FRAME);
+					out.writeInt(frame.id);
+					frame.write(out);
+				}
+				if (!batch.isEmpty()) {
+					out.writeByte(BATCH);
+					out.writeInt(frame.id);
+					out.writeInt(batch.size());
+					for (Tile tile : batch) {
+						out.writeLong(tile.id);
+						out.writeInt(tile.x);
+						out.writeInt(tile.y);
+						out.writeInt(tile.w);
+						out.writeInt(tile.h);
+					}
+				}
+				out.flush();
+			}
+		}
+
+		private void receive() throws IOException, DataFormatException {
+			Inflater inflater = new Inflater();
+			try {
+				while (true) {
+					byte type = in.readByte();
+					long id = in.readLong();
+					if (type == RESULT) {
+						byte[] data = new byte[in.readInt()];
+						in.readFully(data);
+						Tile tile;
+						synchronized (RenderFarm.this) {
+							tile = active.get(id);
+						}
+						// dropped, or done by a worker that stole it
+						if (tile != null)
+							done(this, tile, decode(inflater, data, tile.w, tile.h));
+					} else if (type == FAILED) {
+						String message = in.readUTF();
+						System.err.println("Farm worker " + name + " could not compute a tile: " + message);
+						retry(this, id);
+					} else {
+						throw new IOException("Unknown message " + type + " from " + name);
+					}
+				}
+			} finally {
+				inflater.end();
+			}
+		}
+	}
+
+	/*
+	 * Farm of the workers at the given addresses, host:port each. The ones
+	 * that cannot be reached are left out with a message on System.err.
+	 * @throws IOException if none of them can be reached
+	 */
+	public RenderFarm(Collection<String> addresses) throws IOException {
+		for (String address : addresses) {
+			try {
+				workers.add(new Worker(address.trim()));
+			} catch (IOException e) {
+				System.err.println("Farm worker " + address + " left out: " + e.getMessage());
+			}
+		}
+		if (workers.isEmpty())
+			throw new IOException("None of the farm workers could be reached");
+		for (Worker worker : workers)
+			worker.start();
+	}
+
+	/* farm of a comma separated list of host:port */
+	public static RenderFarm connect(String addresses) throws IOException {
+		List<String> list = new ArrayList<String>();
+		for (String address : addresses.split(","))
+			if (!address.trim().isEmpty())
+				list.add(address.trim());
+		return new RenderFarm(list);
+	}
+
+	/*
+	 * Farm of this program, with the workers given with -Dfractal.farm=host:port,host:port
+	 * @return null if there is none or none can be reached
+	 */
+	public static synchronized RenderFarm getDefault() {
+		if (defaultOpened)
+			return defaultFarm;
+		defaultOpened = true;
+
+		String addresses = System.getProperty("fractal.farm");
+		if (addresses == null)
+			return null;
+
+		try {
+			defaultFarm = connect(addresses);
+		} catch (IOException e) {
+			System.err.println("Render farm not used (" + e.getMessage() + ")");
+		}
+		return defaultFarm;
+	}
+
+	/*
+	 * Queue the w x h tile whose top left pixel is (x, y) in the frame,
+	 * waits while too many tiles are queued already.
+	 */
+	public Tile submit(Frame frame, int x, int y, int w, int h) throws InterruptedException {
+		synchronized (this) {
+			while (queue.size() >= MAX_QUEUED && !workers.isEmpty() && !closed)
+				wait();
+
+			Tile tile = new Tile(nextTile++, frame, x, y, w, h);
+			if (workers.isEmpty() || closed) {
+				tile.finish(null);
+				return tile;
+			}
+			queue.addLast(tile);
+			active.put(tile.id, tile);
+			notifyAll();
+			return tile;
+		}
+	}
+
+	/* the tiles are no longer wanted, the ones not finished yet are failed */
+	public void cancel(Collection<Tile> tiles) {
+		List<Tile> cancelled = new ArrayList<Tile>();
+		synchronized (this) {
+			for (Tile tile : tiles) {
+				if (active.remove(tile.id) == null)
+					continue;
+				cancelled.add(tile);
+				if (tile.owner == null) {
+					queue.remove(tile);
+				} else {
+					tile.owner.sent.remove(tile.id);
+					tile.owner.cancels.add(tile.id);
+				}
+			}
+			notifyAll();
+		}
+		for (Tile tile : cancelled)
+			tile.finish(null);
+	}
+
+	/* number of workers still connected */
+	public synchronized int getWorkers() {
+		return workers.size();
+	}
+
+	/* threads of the workers still connected */
+	public synchronized int getThreads() {
+		int threads = 0;
+		for (Worker worker : workers)
+			threads += worker.threads;
+		return threads;
+	}
+
+	/* tiles the workers still connected can be sent at once, never more than MAX_QUEUED */
+	public synchronized int getCapacity() {
+		int capacity = 0;
+		for (Worker worker : workers)
+			capacity += worker.threads * TILES_PER_THREAD;
+		return Math.min(capacity, MAX_QUEUED);
+	}
+
+	/* one line per worker, with the tiles stolen and computed again */
+	public synchronized String summary() {
+		StringBuilder s = new StringBuilder();
+		for (Worker worker : workers)
+			s.append(String.format("%s: %d threads, %d tiles%n", worker.name, worker.threads, worker.tilesDone));
+		s.append(String.format("%d tiles stolen, %d computed again", stolen, retried));
+		return s.toString();
+	}
+
+	/* disconnect from the workers, the tiles not finished are failed */
+	public void close() {
+		List<Tile> left;
+		synchronized (this) {
+			closed = true;
+			left = new ArrayList<Tile>(active.values());
+			active.clear();
+			queue.clear();
+			for (Worker worker : workers) {
+				worker.dead = true;
+				try {
+					worker.socket.close();
+				} catch (IOException e) {
+					// already closed
+				}
+			}
+			workers.clear();
+			notifyAll();
+		}
+		for (Tile tile : left)
+			tile.finish(null);
+	}
+
+	/*
+	 * Next tiles for the worker, all of one frame, taken from the queue or
+	 * stolen from another worker once the queue is empty. Called holding the lock.
+	 * @return false if there is nothing it can be given
+	 */
+	private boolean takeBatch(Worker worker, List<Tile> batch) {
+		int room = Math.min(worker.threads * TILES_PER_THREAD - worker.sent.size(), MAX_BATCH);
+		if (room <= 0)
+			return false;
+
+		Frame frame = null;
+		while (batch.size() < room && !queue.isEmpty() && (frame == null || queue.peekFirst().frame == frame)) {
+			Tile tile = queue.pollFirst();
+			frame = tile.frame;
+			give(worker, tile);
+			batch.add(tile);
+		}
+		if (!batch.isEmpty())
+			return true;
+
+		// only an idle worker steals, and only tiles waiting behind the running ones of another
+		if (!worker.sent.isEmpty())
+			return false;
+		Worker victim = null;
+		for (Worker other : workers)
+			if (other != worker && other.sent.size() > other.threads
+				&& (victim == null || other.sent.size() - other.threads > victim.sent.size() - victim.threads))
+				victim = other;
+		if (victim != null) {
+			Tile last = null;
+			for (Tile tile : victim.sent.values())
+				last = tile;
+			victim.sent.remove(last.id);
+			victim.cancels.add(last.id);
+			give(worker, last);
+			batch.add(last);
+			stolen++;
+			return true;
+		}
+
+		// the oldest tile still running elsewhere after STRAGGLER_MILLIS, the first answer is kept
+		Tile oldest = null;
+		long now = System.currentTimeMillis();
+		for (Worker other : workers) {
+			if (other == worker || other.sent.isEmpty())
+				continue;
+			Tile tile = other.sent.values().iterator().next();
+			if (now - tile.sentAt > STRAGGLER_MILLIS && (oldest == null || tile.sentAt < oldest.sentAt))
+				oldest = tile;
+		}
+		if (oldest == null)
+			return false;
+		oldest.owner.sent.remove(oldest.id);
+		give(worker, oldest);
+		batch.add(oldest);
+		stolen++;
+		return true;
+	}
+
+	private void give(Worker worker, Tile tile) {
+		tile.owner = worker;
+		tile.sentAt = System.currentTimeMillis();
+		worker.sent.put(tile.id, tile);
+	}
+
+	private void done(Worker worker, Tile tile, int[] counts) {
+		synchronized (this) {
+			if (active.remove(tile.id) == null)
+				return;
+			worker.tilesDone++;
+			if (tile.owner != null) {
+				tile.owner.sent.remove(tile.id);
+				// the one it was stolen from finished it first
+				if (tile.owner != worker)
+					tile.owner.cancels.add(tile.id);
+			}
+			notifyAll();
+		}
+		tile.finish(counts);
+	}
+
+	/* compute the tile again elsewhere, or fail it after MAX_ATTEMPTS */
+	private void retry(Worker worker, long id) {
+		Tile failed = null;
+		synchronized (this) {
+			Tile tile = active.get(id);
+			if (tile == null || tile.owner != worker)
+				return;
+			worker.sent.remove(id);
+			tile.owner = null;
+			if (++tile.attempts >= MAX_ATTEMPTS || workers.isEmpty()) {
+				active.remove(id);
+				failed = tile;
+			} else {
+				queue.addFirst(tile);
+				retried++;
+			}
+			notifyAll();
+		}
+		if (failed != null)
+			failed.finish(null);
+	}
+
+	/* the connection to the worker broke, its tiles go to the others */
+	private void lost(Worker worker, Exception e) {
+		List<Long> ids;
+		List<Tile> failed = new ArrayList<Tile>();
+		synchronized (this) {
+			if (worker.dead)
+				return;
+			worker.dead = true;
+			workers.remove(worker);
+			if (!closed)
+				System.err.println("Farm worker " + worker.name + " lost (" + e + "), " + workers.size() + " left");
+
+			// oldest first so they go back at the front in order
+			ids = new ArrayList<Long>(worker.sent.keySet());
+			for (int i = ids.size() - 1; i >= 0; i--) {
+				Tile tile = worker.sent.get(ids.get(i));
+				tile.owner = null;
+				if (++tile.attempts >= MAX_ATTEMPTS) {
+					active.remove(tile.id);
+					failed.add(tile);
+				} else {
+					queue.addFirst(tile);
+					retried++;
+				}
+			}
+			worker.sent.clear();
+
+			// nobody left to compute the rest
+			if (workers.isEmpty()) {
+				for (Iterator<Tile> i = queue.iterator(); i.hasNext();) {
+					Tile tile = i.next();
+					active.remove(tile.id);
+					failed.add(tile);
+					i.remove();
+				}
+			}
+			notifyAll();
+		}
+		try {
+			worker.socket.close();
+		} catch (IOException ioe) {
+			// already broken
+		}
+		for (Tile tile : failed)
+			tile.finish(null);
+	}
+
+	/* counts are sent as the difference with the pixel on their left, which deflates much better */
+	static byte[] encode(Deflater deflater, int[] counts, int w, int h) {
+		ByteBuffer bytes = ByteBuffer.allocate(4 * w * h);
+		for (int y = 0; y < h; y++) {
+			int left = 0;
+			for (int x = y * w; x < (y + 1) * w; x++) {
+				bytes.putInt(counts[x] - left);
+				left = counts[x];
+			}
+		}
+
+		deflater.reset();
+		deflater.setInput(bytes.array());
+		deflater.finish();
+		byte[] out = new byte[bytes.capacity() / 4 + 64];
+		int length = 0;
+		while (!deflater.finished()) {
+			if (length == out.length)
+				out = Arrays.copyOf(out, 2 * out.length);
+			length += deflater.deflate(out, length, out.length - length);
+		}
+		return Arrays.copyOf(out, length);
+	}
+
+	static int[] decode(Inflater inflater, byte[] data, int w, int h) throws DataFormatException {
+		byte[] bytes = new byte[4 * w * h];
+		inflater.reset();
+		inflater.setInput(data);
+		int length = 0;
+		while (length < bytes.length && !inflater.finished()) {
+			int n = inflater.inflate(bytes, length, bytes.length - length);
+			if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+				break;
+			length += n;
+		}
+		if (length != bytes.length)
+			throw new DataFormatException("Tile of " + length + " bytes instead of " + bytes.length);
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		int[] counts = new int[w * h];
+		for (int y = 0; y < h; y++) {
+			int left = 0;
+			for (int x = y * w; x < (y + 1) * w; x++) {
+				left += buffer.getInt();
+				counts[x] = left;
+			}
+		}
+		return counts;
+	}
+}
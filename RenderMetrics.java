@@ -0,0 +1,329 @@
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Percentage;
+
+
+public class RenderMetrics implements RenderMetricsMBean {
+
+	/*
+	 * How the frames of an engine went, the last one and since the start.
+	 * The engine times the tiles and the renderer tells when a frame starts
+	 * and ends and what it holds. Read by the overlay of the panel and over
+	 * JMX once registered, every tile and frame is also a JFR event
+	 * (fractal.Tile and fractal.Frame, recorded with -XX:StartFlightRecording).
+	 */
+
+	@Name("fractal.Tile")
+	@Label("Render Tile")
+	@Category("Fractal Explorer")
+	static class TileEvent extends Event {
+		@Label("X")
+		int x;
+		@Label("Y")
+		int y;
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+		@Label("Generation")
+		long generation;
+		@Label("Cancelled")
+		boolean cancelled;
+	}
+
+	@Name("fractal.Frame")
+	@Label("Render Frame")
+	@Category("Fractal Explorer")
+	static class FrameEvent extends Event {
+		@Label("Width")
+		int width;
+		@Label("Height")
+		int height;
+		@Label("Max Iterations")
+		int maxIter;
+		@Label("Generation")
+		long generation;
+		@Label("Completed")
+		boolean completed;
+		@Label("Iterations")
+		long iterations;
+		@Label("Escaped")
+		int escaped;
+		@Label("Bounded")
+		int bounded;
+		@Label("Tiles")
+		int tiles;
+		@Label("Cached Tiles")
+		int cachedTiles;
+		@Label("Worker Utilization")
+		@Percentage
+		double utilization;
+	}
+
+	private final int workers; // the frame is computed on, to tell how busy they were
+
+	/* frame being rendered, guarded by this */
+	private boolean inFrame = false;
+	private long frameStart; // System.nanoTime()
+	private long firstTile; // nanos from the start to the first tile done, -1 before
+	private int frameTiles;
+	private int frameCachedTiles;
+	private long frameBusy; // nanos spent in the tiles
+	private FrameEvent frameEvent;
+
+	/* last frame rendered to the end */
+	private double lastMillis, lastFirstPixelMillis, lastPixelsPerSecond, lastUtilization;
+	private int lastPixels, lastEscaped, lastBounded, lastTiles, lastCachedTiles;
+	private long lastIterations;
+
+	/* since the start or reset() */
+	private long frames, cancelledFrames, tiles, cachedTiles;
+	private long frameNanos; // of the frames rendered to the end
+
+	public RenderMetrics(int workers) {
+		this.workers = Math.max(1, workers);
+	}
+
+	/*
+	 * Show the metrics over JMX as fractalexplorer:type=RenderMetrics,name=...
+	 * @return false if they could not be registered
+	 */
+	public boolean register(String name) {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+					new ObjectName("fractalexplorer:type=RenderMetrics,name=" + ObjectName.quote(name)));
+			return true;
+		} catch (JMException e) {
+			System.err.println("Render metrics not available over JMX (" + e + ")");
+			return false;
+		}
+	}
+
+	/* a frame of the given generation starts, the tiles done until endFrame() are its own */
+	public synchronized void startFrame(long generation, int width, int height, int maxIter) {
+		inFrame = true;
+		frameStart = System.nanoTime();
+		firstTile = -1;
+		frameTiles = 0;
+		frameCachedTiles = 0;
+		frameBusy = 0;
+
+		frameEvent = new FrameEvent();
+		frameEvent.begin();
+		frameEvent.generation = generation;
+		frameEvent.width = width;
+		frameEvent.height = height;
+		frameEvent.maxIter = maxIter;
+	}
+
+	/* tiles of the frame found in a cache instead of being computed */
+	public synchronized void tilesCached(int count) {
+		frameCachedTiles += count;
+		cachedTiles += count;
+	}
+
+	/* called by the engine for every tile, in or out of a frame, nanos being the time it took */
+	public synchronized void tileDone(long nanos) {
+		tiles++;
+		if (!inFrame)
+			return;
+
+		frameTiles++;
+		frameBusy += nanos;
+		if (firstTile < 0)
+			firstTile = System.nanoTime() - frameStart;
+	}
+
+	/*
+	 * The frame started last is rendered to the end, with the counts of its pixels:
+	 * escaped of them below maxIter, bounded ones at maxIter, iterations the sum of all counts
+	 */
+	public synchronized void endFrame(int pixels, long iterations, int escaped, int bounded) {
+		if (!inFrame)
+			return;
+		inFrame = false;
+
+		long nanos = System.nanoTime() - frameStart;
+		frames++;
+		frameNanos += nanos;
+
+		lastMillis = nanos / 1e6;
+		lastFirstPixelMillis = (firstTile < 0) ? lastMillis : firstTile / 1e6;
+		lastPixels = pixels;
+		lastPixelsPerSecond = (nanos > 0) ? pixels * 1e9 / nanos : 0.0;
+		lastIterations = iterations;
+		lastEscaped = escaped;
+		lastBounded = bounded;
+		lastTiles = frameTiles;
+		lastCachedTiles = frameCachedTiles;
+		// share of the time of the workers spent on the frame, the thread waiting
+		// for an interactive frame computes tiles too so it is capped
+		lastUtilization = (nanos > 0) ? Math.min(1.0, (double) frameBusy / ((double) nanos * workers)) : 0.0;
+
+		commitFrame(true, iterations, escaped, bounded, lastUtilization);
+	}
+
+	/* the frame started last was cancelled before its end */
+	public synchronized void cancelFrame() {
+		if (!inFrame)
+			return;
+		inFrame = false;
+
+		cancelledFrames++;
+		commitFrame(false, 0, 0, 0, 0.0);
+	}
+
+	private void commitFrame(boolean completed, long iterations, int escaped, int bounded, double utilization) {
+		FrameEvent event = frameEvent;
+		frameEvent = null;
+		event.end();
+		if (!event.shouldCommit())
+			return;
+
+		event.completed = completed;
+		event.iterations = iterations;
+		event.escaped = escaped;
+		event.bounded = bounded;
+		event.tiles = frameTiles;
+		event.cachedTiles = frameCachedTiles;
+		event.utilization = utilization;
+		event.commit();
+	}
+
+	/* JFR event for a tile, begun before the tile is computed and null if nobody records them */
+	static TileEvent beginTile() {
+		TileEvent event = new TileEvent();
+		if (!event.isEnabled())
+			return null;
+		event.begin();
+		return event;
+	}
+
+	static void endTile(TileEvent event, int x, int y, int w, int h, long generation, boolean cancelled) {
+		if (event == null)
+			return;
+		event.end();
+		if (!event.shouldCommit())
+			return;
+
+		event.x = x;
+		event.y = y;
+		event.width = w;
+		event.height = h;
+		event.generation = generation;
+		event.cancelled = cancelled;
+		event.commit();
+	}
+
+	/* a few lines for the overlay of the panel */
+	public synchronized String[] summary() {
+		String current = inFrame ? String.format("rendering for %.0f ms, %d tiles done",
+												 (System.nanoTime() - frameStart) / 1e6, frameTiles)
+								 : "idle";
+		return new String[] {
+			current,
+			String.format("frame %.1f ms, first tile %.1f ms", lastMillis, lastFirstPixelMillis),
+			String.format("%.2f Mpixels/s, %d tiles, %d cached", lastPixelsPerSecond / 1e6, lastTiles,
+						  lastCachedTiles),
+			String.format("%.1f iterations/pixel, %d escaped, %d bounded",
+						  (lastPixels > 0) ? (double) lastIterations / lastPixels : 0.0, lastEscaped, lastBounded),
+			String.format("workers %.0f%% busy, %d frames, %d cancelled", 100 * lastUtilization, frames,
+						  cancelledFrames),
+		};
+	}
+
+	@Override
+	public synchronized long getFrames() {
+		return frames;
+	}
+
+	@Override
+	public synchronized long getCancelledFrames() {
+		return cancelledFrames;
+	}
+
+	@Override
+	public synchronized long getTiles() {
+		return tiles;
+	}
+
+	@Override
+	public synchronized long getCachedTiles() {
+		return cachedTiles;
+	}
+
+	@Override
+	public synchronized double getMeanFrameMillis() {
+		return (frames > 0) ? frameNanos / 1e6 / frames : 0.0;
+	}
+
+	@Override
+	public synchronized double getLastFrameMillis() {
+		return lastMillis;
+	}
+
+	@Override
+	public synchronized double getLastFirstPixelMillis() {
+		return lastFirstPixelMillis;
+	}
+
+	@Override
+	public synchronized double getLastPixelsPerSecond() {
+		return lastPixelsPerSecond;
+	}
+
+	@Override
+	public synchronized int getLastPixels() {
+		return lastPixels;
+	}
+
+	@Override
+	public synchronized long getLastIterations() {
+		return lastIterations;
+	}
+
+	@Override
+	public synchronized double getLastMeanIterations() {
+		return (lastPixels > 0) ? (double) lastIterations / lastPixels : 0.0;
+	}
+
+	@Override
+	public synchronized int getLastEscaped() {
+		return lastEscaped;
+	}
+
+	@Override
+	public synchronized int getLastBounded() {
+		return lastBounded;
+	}
+
+	@Override
+	public synchronized int getLastTiles() {
+		return lastTiles;
+	}
+
+	@Override
+	public synchronized int getLastCachedTiles() {
+		return lastCachedTiles;
+	}
+
+	@Override
+	public synchronized double getLastWorkerUtilization() {
+		return lastUtilization;
+	}
+
+	@Override
+	public synchronized void reset() {
+		frames = 0;
+		cancelledFrames = 0;
+		tiles = 0;
+		cachedTiles = 0;
+		frameNanos = 0;
+	}
+}
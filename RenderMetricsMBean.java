@@ -0,0 +1,41 @@
+public interface RenderMetricsMBean {
+
+	/*
+	 * What a RenderMetrics shows over JMX (jconsole, VisualVM), the
+	 * Last ones are about the last frame rendered to the end
+	 */
+
+	long getFrames();
+
+	long getCancelledFrames();
+
+	long getTiles();
+
+	long getCachedTiles();
+
+	double getMeanFrameMillis();
+
+	double getLastFrameMillis();
+
+	double getLastFirstPixelMillis();
+
+	double getLastPixelsPerSecond();
+
+	int getLastPixels();
+
+	long getLastIterations();
+
+	double getLastMeanIterations();
+
+	int getLastEscaped();
+
+	int getLastBounded();
+
+	int getLastTiles();
+
+	int getLastCachedTiles();
+
+	double getLastWorkerUtilization();
+
+	void reset();
+}
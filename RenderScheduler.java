@@ -0,0 +1,206 @@
+import java.util.ArrayList;
+
+
+public class RenderScheduler {
+
+	/*
+	 * Workers shared by the engines of the program, so the windows do not
+	 * each start one thread per core and compete blindly for them.
+	 * Engines submit their frames as jobs of tiles. A worker always takes
+	 * a tile of the most urgent priority there is, and goes round the jobs
+	 * of that priority one tile at a time so they share the workers evenly.
+	 */
+
+	/* what the user is waiting for (previews, the window being used) */
+	public static final int PRIORITY_INTERACTIVE = 0;
+	/* only drawn when no interactive tile is waiting */
+	public static final int PRIORITY_BACKGROUND = 1;
+	private static final int PRIORITIES = 2;
+
+	private static RenderScheduler defaultScheduler;
+
+	/*
+	 * Tiles of a frame, handed to the workers in order. The fields
+	 * are guarded by the scheduler running the job.
+	 */
+	public static abstract class Job {
+
+		private final int priority;
+		private final int tiles;
+		private int next = 0; // next tile to hand out
+		private int running = 0; // tiles being computed
+		private Throwable failure;
+
+		protected Job(int priority, int tiles) {
+			this.priority = Math.max(0, Math.min(priority, PRIORITIES - 1));
+			this.tiles = tiles;
+		}
+
+		/* compute the tile number i of the job */
+		protected abstract void runTile(int i);
+
+		/* once cancelled no more tiles are started */
+		protected abstract boolean isCancelled();
+
+		private boolean isFinished() {
+			return (next == tiles || isCancelled()) && running == 0;
+		}
+	}
+
+	private final ArrayList<ArrayList<Job>> queues = new ArrayList<ArrayList<Job>>();
+	private final int[] turn = new int[PRIORITIES]; // job of each priority whose turn it is
+	private final Thread[] workers;
+	private boolean shutdown = false;
+
+	public RenderScheduler(int workerCount) {
+		for (int p = 0; p < PRIORITIES; p++)
+			queues.add(new ArrayList<Job>());
+
+		workers = new Thread[Math.max(1, workerCount)];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					work();
+				}
+			}, "render-" + i);
+			workers[i].setDaemon(true);
+			workers[i].setPriority(Thread.MIN_PRIORITY); // set it to min so it is not obtrusive
+			workers[i].start();
+		}
+	}
+
+	/* shared by every engine created without a number of workers, see RenderEngine.defaultParallelism() */
+	public static synchronized RenderScheduler getDefault() {
+		if (defaultScheduler == null)
+			defaultScheduler = new RenderScheduler(RenderEngine.defaultParallelism());
+		return defaultScheduler;
+	}
+
+	/*
+	 * Run every tile of the job and wait for them, or until the job is
+	 * cancelled and its tiles already started are done.
+	 * The thread waiting for an interactive job computes its tiles too, so
+	 * it starts at once even when every worker is busy with a background tile.
+	 * @return false if the waiting thread was interrupted
+	 */
+	public boolean run(Job job) {
+		synchronized (this) {
+			if (shutdown)
+				throw new IllegalStateException("scheduler shut down");
+			queues.get(job.priority).add(job);
+			notifyAll();
+		}
+
+		while (true) {
+			int tile;
+			synchronized (this) {
+				if (job.isFinished())
+					break;
+				if (job.priority == PRIORITY_INTERACTIVE && job.next < job.tiles && !job.isCancelled()) {
+					tile = job.next++;
+					job.running++;
+				} else {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						// abandoned like a cancelled job, the tiles started are left to finish
+						Thread.currentThread().interrupt();
+						queues.get(job.priority).remove(job);
+						return false;
+					}
+					continue;
+				}
+			}
+			runTile(job, tile);
+		}
+
+		synchronized (this) {
+			queues.get(job.priority).remove(job);
+		}
+
+		if (job.failure instanceof RuntimeException)
+			throw (RuntimeException) job.failure;
+		if (job.failure instanceof Error)
+			throw (Error) job.failure;
+		return true;
+	}
+
+	/* wake the threads waiting for jobs, called when a job has been cancelled */
+	public synchronized void wake() {
+		notifyAll();
+	}
+
+	private void work() {
+		while (true) {
+			Job job;
+			int tile;
+			synchronized (this) {
+				while ((job = take()) == null) {
+					if (shutdown)
+						return;
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				tile = job.next++;
+				job.running++;
+			}
+			runTile(job, tile);
+		}
+	}
+
+	/* the tile must have been counted as running */
+	private void runTile(Job job, int tile) {
+		try {
+			job.runTile(tile);
+		} catch (Throwable t) {
+			synchronized (this) {
+				job.failure = t;
+				job.next = job.tiles; // give up the rest of the frame
+			}
+		}
+
+		synchronized (this) {
+			job.running--;
+			if (job.isFinished())
+				notifyAll();
+		}
+	}
+
+	/* the job with a tile to give next, the lock must be held */
+	private Job take() {
+		for (int p = 0; p < PRIORITIES; p++) {
+			ArrayList<Job> queue = queues.get(p);
+
+			// jobs with no tile left to start leave the queue, their waiter returns once the last one is done
+			for (int i = queue.size() - 1; i >= 0; i--) {
+				Job job = queue.get(i);
+				if (job.next == job.tiles || job.isCancelled()) {
+					queue.remove(i);
+					if (job.isFinished())
+						notifyAll();
+				}
+			}
+
+			if (!queue.isEmpty()) {
+				turn[p] = (turn[p] + 1) % queue.size();
+				return queue.get(turn[p]);
+			}
+		}
+		return null;
+	}
+
+	public int getWorkers() {
+		return workers.length;
+	}
+
+	/* the workers stop once no job is left */
+	public synchronized void shutdown() {
+		shutdown = true;
+		notifyAll();
+	}
+}
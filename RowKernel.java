@@ -0,0 +1,16 @@
+public interface RowKernel {
+
+	/*
+	 * Escape time kernel computing a whole row of points at once,
+	 * the points are re[i] + im*i for i < n and the counts go to out[i].
+	 * If z is not null the z where point i stopped goes to z[2i] and z[2i + 1],
+	 * as EscapeTime.mandelbrot() saves it, so the points can be resumed.
+	 */
+
+	void mandelbrot(double[] re, double im, int n, int maxIter, int[] out, double[] z);
+
+	/* the points are the starting values of z, c is fixed */
+	void julia(double[] re, double im, int n, double cr, double ci, int maxIter, int[] out, double[] z);
+
+	String getName();
+}
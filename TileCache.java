@@ -0,0 +1,247 @@
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+public class TileCache {
+
+	/*
+	 * Iteration counts of rendered tiles, least recently used first out.
+	 * Tiles are squares of TILE_SIZE pixels on a grid anchored at the origin
+	 * of the complex plane, so a tile is found again whenever the view comes
+	 * back to the same pixel size (the level of the grid), however it was reached.
+	 * The cache is bounded by the memory its tiles use, tiles it does not
+	 * have can be looked up in a TileStore on disk.
+	 */
+
+	public static final int TILE_SIZE = RenderEngine.TILE_SIZE;
+
+	/* memory used by one tile, the counts plus the key and map entry */
+	private static final long TILE_BYTES = 4L * TILE_SIZE * TILE_SIZE + 128;
+
+	public static final class Key {
+
+		static final int KEY_BYTES = 60;
+
+		/*
+		 * how the counts were found, a tile is only used again by a render finding
+		 * them the same way: the subdivision fills some pixels approximately and the
+		 * shortcuts of EscapeTime answer some points without iterating them
+		 */
+		public static final int SUBDIVIDED = 1;
+		public static final int CARDIOID = 2;
+		public static final int PERIODICITY = 4;
+
+		private final long levelX, levelY; // pixel size, as the bits of the doubles
+		private final long tileX, tileY;
+		private final int maxIter;
+		private final int fractal;
+		private final long juliaRe, juliaIm;
+		private final int method;
+
+		public Key(double spacingX, double spacingY, long tileX, long tileY, int maxIter,
+				   int fractal, double juliaRe, double juliaIm, int method) {
+			this.levelX = Double.doubleToLongBits(spacingX);
+			this.levelY = Double.doubleToLongBits(spacingY);
+			this.tileX = tileX;
+			this.tileY = tileY;
+			this.maxIter = maxIter;
+			this.fractal = fractal;
+			// the constant does not matter for mandelbrot
+			this.juliaRe = (fractal == FractalRenderer.TYPE_JULIA) ? Double.doubleToLongBits(juliaRe) : 0;
+			this.juliaIm = (fractal == FractalRenderer.TYPE_JULIA) ? Double.doubleToLongBits(juliaIm) : 0;
+			this.method = method;
+		}
+
+		private Key(ByteBuffer b, int offset) {
+			fractal = b.getInt(offset);
+			maxIter = b.getInt(offset + 4);
+			levelX = b.getLong(offset + 8);
+			levelY = b.getLong(offset + 16);
+			tileX = b.getLong(offset + 24);
+			tileY = b.getLong(offset + 32);
+			juliaRe = b.getLong(offset + 40);
+			juliaIm = b.getLong(offset + 48);
+			method = b.getInt(offset + 56);
+		}
+
+		/* KEY_BYTES bytes, the fractal comes first and is never 0 */
+		static Key read(ByteBuffer b, int offset) {
+			return new Key(b, offset);
+		}
+
+		/* the fractal is written last, a record is only valid once it is there */
+		void write(ByteBuffer b, int offset) {
+			b.putInt(offset + 4, maxIter);
+			b.putLong(offset + 8, levelX);
+			b.putLong(offset + 16, levelY);
+			b.putLong(offset + 24, tileX);
+			b.putLong(offset + 32, tileY);
+			b.putLong(offset + 40, juliaRe);
+			b.putLong(offset + 48, juliaIm);
+			b.putInt(offset + 56, method);
+			b.putInt(offset, fractal);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key) o;
+			return levelX == k.levelX && levelY == k.levelY && tileX == k.tileX && tileY == k.tileY
+					&& maxIter == k.maxIter && fractal == k.fractal
+					&& juliaRe == k.juliaRe && juliaIm == k.juliaIm && method == k.method;
+		}
+
+		@Override
+		public int hashCode() {
+			long h = levelX * 31 + levelY;
+			h = h * 31 + tileX;
+			h = h * 31 + tileY;
+			h = h * 31 + maxIter;
+			h = h * 31 + fractal;
+			h = h * 31 + juliaRe;
+			h = h * 31 + juliaIm;
+			h = h * 31 + method;
+			return (int)(h ^ (h >>> 32));
+		}
+	}
+
+	private final LinkedHashMap<Key, int[]> tiles;
+	private final long maxBytes;
+	private long bytes = 0;
+
+	private long hits, misses, evictions;
+
+	private volatile TileStore store;
+
+	public TileCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+		tiles = new LinkedHashMap<Key, int[]>(256, 0.75f, true); // access order for LRU
+	}
+
+	/* size can be set in megabytes with -Dfractal.cache.mb=N, 0 turns the cache off */
+	public static TileCache withDefaultSize() {
+		long mb = Long.getLong("fractal.cache.mb", 64);
+		return (mb > 0) ? new TileCache(mb * 1024 * 1024) : null;
+	}
+
+	/* tiles missing from memory are looked up there and every new tile is saved there */
+	public void setStore(TileStore store) {
+		this.store = store;
+	}
+
+	public TileStore getStore() {
+		return store;
+	}
+
+	/* @return the counts of the tile, row by row, or null if it is not cached */
+	public int[] get(Key key) {
+		synchronized (this) {
+			int[] tile = tiles.get(key);
+			if (tile != null) {
+				hits++;
+				return tile;
+			}
+			misses++;
+		}
+
+		// the disk is read without holding the cache
+		TileStore store = this.store;
+		int[] tile = (store != null) ? store.get(key) : null;
+		if (tile != null)
+			keep(key, tile);
+		return tile;
+	}
+
+	/*
+	 * The tiles of the keys found in memory, the store is not read.
+	 * @return the number found, the others are left null in tiles
+	 */
+	public synchronized int getAll(Key[] keys, int[][] tiles) {
+		int found = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == null)
+				continue;
+			tiles[i] = this.tiles.get(keys[i]);
+			if (tiles[i] != null) {
+				hits++;
+				found++;
+			} else {
+				misses++;
+			}
+		}
+		return found;
+	}
+
+	/*
+	 * The tiles of the keys not null found in the store, all read at once,
+	 * and kept in memory.
+	 * @return the number found, the others are left null in tiles
+	 */
+	public int getAllStored(Key[] keys, int[][] tiles) {
+		TileStore store = this.store;
+		if (store == null)
+			return 0;
+		int found = store.getAll(keys, tiles);
+		if (found > 0)
+			for (int i = 0; i < keys.length; i++)
+				if (tiles[i] != null)
+					keep(keys[i], tiles[i]);
+		return found;
+	}
+
+	/* the array is kept as is, it must not be modified afterwards */
+	public void put(Key key, int[] tile) {
+		keep(key, tile);
+
+		TileStore store = this.store;
+		if (store != null)
+			store.put(key, tile);
+	}
+
+	private synchronized void keep(Key key, int[] tile) {
+		if (tiles.put(key, tile) == null)
+			bytes += TILE_BYTES;
+
+		Iterator<Map.Entry<Key, int[]>> it = tiles.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			it.next();
+			it.remove();
+			bytes -= TILE_BYTES;
+			evictions++;
+		}
+	}
+
+	public synchronized void clear() {
+		tiles.clear();
+		bytes = 0;
+	}
+
+	public synchronized int size() {
+		return tiles.size();
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d tiles (%d KB), %d hits, %d misses, %d evictions",
+							 tiles.size(), bytes / 1024, hits, misses, evictions);
+	}
+}
@@ -0,0 +1,329 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+
+
+public class TileStore {
+
+	/*
+	 * Tiles kept on disk between sessions, in two memory mapped files:
+	 * - tiles.dat holds the counts, one fixed size slot per tile, filled in order
+	 * - tiles.idx has a header then one record per slot with the key of its tile
+	 *   and when it was last used
+	 * Once every slot is used the tile used the longest ago is replaced.
+	 * Tiles are copied from the mapping in one bulk read, there is nothing to decode;
+	 * they are copied rather than used in place since another explorer may
+	 * replace the slot once the lock is released.
+	 *
+	 * Several explorers can share the directory: the index is locked while
+	 * reading (shared) or writing (exclusive), and the header has a generation
+	 * number changed by every write so the others know to read the index again.
+	 * A tile not in the index read last is missing without locking, as long as
+	 * the generation has not changed. When tiles were used is kept here and
+	 * written with the next tile saved, under the exclusive lock.
+	 */
+
+	private static final int MAGIC = 0x46585453; // "FXTS"
+	private static final int VERSION = 2; // keys with the way tiles were computed
+
+	private static final int TILE_INTS = TileCache.TILE_SIZE * TileCache.TILE_SIZE;
+	private static final int TILE_BYTES = 4 * TILE_INTS;
+	/* a mapping is limited to 2 GB */
+	private static final int MAX_SLOTS = Integer.MAX_VALUE / TILE_BYTES;
+
+	/* header of the index */
+	private static final int HEADER_BYTES = 64;
+	private static final int H_MAGIC = 0;
+	private static final int H_VERSION = 4;
+	private static final int H_SLOTS = 8;
+	private static final int H_TILE_SIZE = 12;
+	private static final int H_COUNT = 16; // slots used
+	private static final int H_GENERATION = 24;
+
+	/* records of the index, the key then the time of last use */
+	private static final int RECORD_BYTES = 72;
+	private static final int R_USED = 64; // aligned after the key
+
+	private static TileStore defaultStore;
+	private static boolean defaultOpened = false;
+
+	private final File indexFile;
+	private FileChannel indexChannel; // only used for locking
+	private final ByteBuffer index;
+	private final IntBuffer data;
+	private final int slots;
+
+	/* slot of every tile in the index as it was at generation */
+	private final HashMap<TileCache.Key, Integer> slotOf = new HashMap<TileCache.Key, Integer>();
+	private long generation = -1;
+	/* tiles read since the last write, with when they were */
+	private final HashMap<TileCache.Key, Long> used = new HashMap<TileCache.Key, Long>();
+
+	private long hits, misses, writes, evictions;
+
+	/*
+	 * Open the store in dir, creating it if needed with room for maxBytes of tiles.
+	 * An existing store keeps the size it was created with.
+	 */
+	public TileStore(File dir, long maxBytes) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create " + dir);
+
+		indexFile = new File(dir, "tiles.idx");
+		indexChannel = new RandomAccessFile(indexFile, "rw").getChannel();
+
+		FileLock lock = indexChannel.lock();
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+			indexChannel.read(header, 0);
+
+			boolean valid = header.position() == HEADER_BYTES
+							&& header.getInt(H_MAGIC) == MAGIC
+							&& header.getInt(H_VERSION) == VERSION
+							&& header.getInt(H_TILE_SIZE) == TileCache.TILE_SIZE
+							&& header.getInt(H_SLOTS) > 0 && header.getInt(H_SLOTS) <= MAX_SLOTS;
+
+			if (valid) {
+				slots = header.getInt(H_SLOTS);
+			} else {
+				// new or unreadable, start again from an empty index
+				slots = (int) Math.max(1, Math.min(maxBytes / TILE_BYTES, MAX_SLOTS));
+				indexChannel.truncate(0);
+				header.clear();
+				header.putInt(H_MAGIC, MAGIC);
+				header.putInt(H_VERSION, VERSION);
+				header.putInt(H_SLOTS, slots);
+				header.putInt(H_TILE_SIZE, TileCache.TILE_SIZE);
+				indexChannel.write(header, 0);
+			}
+
+			index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) slots * RECORD_BYTES)
+								.order(ByteOrder.LITTLE_ENDIAN);
+
+			// the data file grows as slots are written to (sparse file)
+			// the mapping stays valid once the file is closed
+			try (RandomAccessFile dataFile = new RandomAccessFile(new File(dir, "tiles.dat"), "rw")) {
+				data = dataFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, (long) slots * TILE_BYTES)
+										  .order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+			}
+		} finally {
+			lock.release();
+		}
+	}
+
+	/*
+	 * Store shared by the explorers of this program, in the directory given
+	 * with -Dfractal.store=dir (default ~/.fractalexplorer/tiles, "none" to turn it off)
+	 * and of -Dfractal.store.mb=N megabytes (default 256).
+	 * @return null if it is turned off or cannot be opened
+	 */
+	public static synchronized TileStore getDefault() {
+		if (defaultOpened)
+			return defaultStore;
+		defaultOpened = true;
+
+		String dir = System.getProperty("fractal.store",
+										 System.getProperty("user.home") + File.separator + ".fractalexplorer"
+										 + File.separator + "tiles");
+		if (dir.equals("none"))
+			return null;
+
+		long mb = Long.getLong("fractal.store.mb", 256);
+		try {
+			defaultStore = new TileStore(new File(dir), mb * 1024 * 1024);
+		} catch (IOException | RuntimeException e) {
+			System.err.println("Tile store not available, tiles will not be saved (" + e + ")");
+		}
+		return defaultStore;
+	}
+
+	/* @return the counts of the tile, row by row, or null if it is not stored */
+	public int[] get(TileCache.Key key) {
+		int[][] tile = new int[1][];
+		getAll(new TileCache.Key[] { key }, tile);
+		return tile[0];
+	}
+
+	/*
+	 * The counts of the tiles of the keys not null, read under a single lock.
+	 * @return the number found, the others are left null in tiles
+	 */
+	public synchronized int getAll(TileCache.Key[] keys, int[][] tiles) {
+		// nothing was written since the index was read, the tiles it does not have are not stored
+		boolean current = index.getLong(H_GENERATION) == generation;
+		boolean[] wanted = new boolean[keys.length];
+		int count = 0;
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] == null)
+				continue;
+			wanted[i] = !current || slotOf.containsKey(keys[i]);
+			if (wanted[i])
+				count++;
+			else
+				misses++;
+		}
+		// an interrupted thread would close the channel while locking
+		if (count == 0 || Thread.currentThread().isInterrupted())
+			return 0;
+
+		int found = 0;
+		try {
+			FileLock lock = channel().lock(0, Long.MAX_VALUE, true);
+			try {
+				refresh();
+
+				long now = System.currentTimeMillis();
+				for (int i = 0; i < keys.length; i++) {
+					if (!wanted[i])
+						continue;
+					Integer slot = slotOf.get(keys[i]);
+					if (slot == null) {
+						misses++;
+						continue;
+					}
+
+					tiles[i] = new int[TILE_INTS];
+					data.get(slot * TILE_INTS, tiles[i]);
+					used.put(keys[i], now);
+					hits++;
+					found++;
+				}
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			// the ones not read are computed again
+		}
+		return found;
+	}
+
+	/* save a tile, replacing the one used the longest ago if the store is full */
+	public synchronized void put(TileCache.Key key, int[] tile) {
+		if (Thread.currentThread().isInterrupted())
+			return;
+
+		try {
+			FileLock lock = channel().lock();
+			try {
+				refresh();
+				writeUses();
+				if (slotOf.containsKey(key))
+					return;
+
+				int count = index.getInt(H_COUNT);
+				int slot;
+				if (count < slots) {
+					slot = count;
+					index.putInt(H_COUNT, count + 1);
+				} else {
+					slot = leastRecentlyUsed();
+					slotOf.remove(TileCache.Key.read(index, record(slot)));
+					evictions++;
+				}
+
+				// the record is invalid while its tile is written
+				int offset = record(slot);
+				index.putInt(offset, 0);
+				data.put(slot * TILE_INTS, tile);
+				index.putLong(offset + R_USED, System.currentTimeMillis());
+				key.write(index, offset);
+
+				generation = index.getLong(H_GENERATION) + 1;
+				index.putLong(H_GENERATION, generation);
+				slotOf.put(key, slot);
+				writes++;
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			// not saved, it will be computed again next time
+		}
+	}
+
+	/* read the index again if another explorer wrote to it, the lock must be held */
+	private void refresh() {
+		long current = index.getLong(H_GENERATION);
+		if (current == generation)
+			return;
+
+		slotOf.clear();
+		int count = Math.min(index.getInt(H_COUNT), slots);
+		for (int slot = 0; slot < count; slot++) {
+			int offset = record(slot);
+			if (index.getInt(offset) != 0)
+				slotOf.put(TileCache.Key.read(index, offset), slot);
+		}
+		generation = current;
+	}
+
+	/* when the tiles read since the last write were used, the exclusive lock must be held */
+	private void writeUses() {
+		for (Map.Entry<TileCache.Key, Long> use : used.entrySet()) {
+			Integer slot = slotOf.get(use.getKey());
+			if (slot != null && index.getLong(record(slot) + R_USED) < use.getValue())
+				index.putLong(record(slot) + R_USED, use.getValue());
+		}
+		used.clear();
+	}
+
+	private int leastRecentlyUsed() {
+		int oldest = 0;
+		long oldestUse = Long.MAX_VALUE;
+		for (int slot = 0; slot < slots; slot++) {
+			long used = index.getLong(record(slot) + R_USED);
+			if (used < oldestUse) {
+				oldestUse = used;
+				oldest = slot;
+			}
+		}
+		return oldest;
+	}
+
+	private static int record(int slot) {
+		return HEADER_BYTES + slot * RECORD_BYTES;
+	}
+
+	/* the channel is closed if a thread was interrupted while locking, open it again */
+	private FileChannel channel() throws IOException {
+		if (!indexChannel.isOpen())
+			indexChannel = new RandomAccessFile(indexFile, "rw").getChannel();
+		return indexChannel;
+	}
+
+	public synchronized int size() {
+		return slotOf.size();
+	}
+
+	public int getSlots() {
+		return slots;
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized long getWrites() {
+		return writes;
+	}
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("%d of %d tiles, %d hits, %d misses, %d writes, %d evictions",
+							 slotOf.size(), slots, hits, misses, writes, evictions);
+	}
+}
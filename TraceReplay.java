@@ -0,0 +1,236 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+public class TraceReplay {
+
+	/*
+	 * Headless latency benchmark, plays an InteractionTrace again on the
+	 * renderers and engines of the explorer without any window, at the pace
+	 * it was recorded, and reports how long each kind of action took to show
+	 * its first pixels and to be drawn completely.
+	 *
+	 * Each panel of the trace is played again on a FractalExplorerPanel with
+	 * no window, so the frames are drawn by its own render thread: every action
+	 * cancels the frame being drawn, julia points are previewed first with the
+	 * step the panel adapts and drawn in full once they rest. The panel tells
+	 * which generation the pixels drawn belong to, each action only counts
+	 * those of its own. Actions superseded before their frame was finished
+	 * only count for the first pixels.
+	 *
+	 * java TraceReplay trace.txt [options]
+	 *   -speed f       play the trace f times faster (default 1)
+	 *   -sequential    wait for the frames of each action before the next one, ignoring the times
+	 *   -nocache       without the tile caches of the panels
+	 */
+
+	private File traceFile;
+	private double speed = 1.0;
+	private boolean sequential = false;
+	private boolean cached = true;
+
+	private final List<Sample> samples = new ArrayList<Sample>();
+
+	/* latencies of one action, in nanos after it was issued, -1 until known */
+	static class Sample {
+
+		final String action;
+		final long issued = System.nanoTime();
+		volatile long firstPixel = -1;
+		volatile long completed = -1;
+
+		Sample(String action) {
+			this.action = action;
+		}
+	}
+
+	/* a panel without its window, with the samples of the actions played on it */
+	private class Session implements FractalExplorerPanel.FrameListener {
+
+		private final FractalExplorerPanel panel;
+
+		/* guarded by this */
+		private final Map<Long, Sample> issued = new HashMap<Long, Sample>(); // by generation
+		private long latest = 0, done = 0;
+
+		Session(int fractal) {
+			panel = new FractalExplorerPanel(null, fractal, null);
+			if (!cached)
+				panel.getRenderer().setTileCache(null);
+			panel.setFrameListener(this);
+		}
+
+		/* the callbacks of its frame wait until the sample is there */
+		synchronized void issue(InteractionTrace.Action action, Sample sample) {
+			latest = panel.replay(action);
+			issued.put(latest, sample);
+		}
+
+		synchronized void waitIdle() throws InterruptedException {
+			while (done != latest)
+				wait();
+		}
+
+		@Override
+		public synchronized void areaDrawn(long generation) {
+			Sample sample = issued.get(generation);
+			if (sample != null && sample.firstPixel < 0)
+				sample.firstPixel = System.nanoTime() - sample.issued;
+		}
+
+		@Override
+		public synchronized void frameDone(long generation) {
+			Sample sample = issued.get(generation);
+			if (sample != null)
+				sample.completed = System.nanoTime() - sample.issued;
+			done = generation;
+			notifyAll();
+		}
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		TraceReplay replay = new TraceReplay();
+		try {
+			replay.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("usage: java TraceReplay trace.txt [-speed f] [-sequential] [-nocache]");
+			System.exit(1);
+		}
+
+		try {
+			replay.run();
+		} catch (IOException | IllegalArgumentException e) {
+			System.err.println("Could not read " + replay.traceFile + ": " + e.getMessage());
+			System.exit(1);
+		} catch (InterruptedException e) {
+			System.exit(1);
+		}
+		// the panels leave the event thread running
+		System.exit(0);
+	}
+
+	void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("-sequential")) {
+				sequential = true;
+				continue;
+			}
+			if (option.equals("-nocache")) {
+				cached = false;
+				continue;
+			}
+			if (!option.startsWith("-")) {
+				traceFile = new File(option);
+				continue;
+			}
+
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + option);
+			String value = args[++i];
+			try {
+				if (option.equals("-speed"))
+					speed = Double.parseDouble(value);
+				else
+					throw new IllegalArgumentException("Unknown option " + option);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Bad value for " + option + ": " + value);
+			}
+		}
+		if (traceFile == null)
+			throw new IllegalArgumentException("No trace given");
+		if (!(speed > 0))
+			throw new IllegalArgumentException("The speed must be positive");
+	}
+
+	void run() throws IOException, InterruptedException {
+		List<InteractionTrace.Action> actions = InteractionTrace.read(traceFile);
+		Session[] sessions = new Session[3]; // by type of fractal
+
+		long start = System.nanoTime();
+		for (InteractionTrace.Action action : actions) {
+			Session session = sessions[action.fractal];
+			if (session == null)
+				session = sessions[action.fractal] = new Session(action.fractal);
+
+			if (sequential) {
+				for (Session s : sessions)
+					if (s != null)
+						s.waitIdle();
+			} else {
+				long wait = start + (long) (action.millis * 1e6 / speed) - System.nanoTime();
+				if (wait > 0)
+					Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+			}
+
+			Sample sample = new Sample(action.action);
+			samples.add(sample);
+			session.issue(action, sample);
+		}
+		for (Session s : sessions)
+			if (s != null)
+				s.waitIdle();
+
+		report(actions.size(), (System.nanoTime() - start) / 1e9);
+	}
+
+	/* one per action replayed, in order */
+	List<Sample> getSamples() {
+		return samples;
+	}
+
+	private void report(int actions, double seconds) {
+		System.out.printf("%s: %d actions replayed in %.1f s, %d threads%s%n", traceFile, actions, seconds,
+						  RenderEngine.defaultParallelism(), cached ? "" : ", no cache");
+		System.out.printf("%-11s %6s %11s   %-24s %-24s%n", "", "count", "superseded",
+						  "first pixels p50/95/99", "complete frame p50/95/99");
+
+		// every kind of action in the order it first came, then all of them
+		Map<String, List<Sample>> kinds = new LinkedHashMap<String, List<Sample>>();
+		for (Sample sample : samples) {
+			if (!kinds.containsKey(sample.action))
+				kinds.put(sample.action, new ArrayList<Sample>());
+			kinds.get(sample.action).add(sample);
+		}
+		kinds.put("all", samples);
+
+		for (Map.Entry<String, List<Sample>> kind : kinds.entrySet()) {
+			List<Sample> list = kind.getValue();
+			long[] first = new long[list.size()];
+			long[] complete = new long[list.size()];
+			int firsts = 0, completes = 0;
+			for (Sample sample : list) {
+				if (sample.firstPixel >= 0)
+					first[firsts++] = sample.firstPixel;
+				if (sample.completed >= 0)
+					complete[completes++] = sample.completed;
+			}
+			System.out.printf("%-11s %6d %11d   %-24s %-24s%n", kind.getKey(), list.size(), list.size() - completes,
+							  percentiles(Arrays.copyOf(first, firsts)), percentiles(Arrays.copyOf(complete, completes)));
+		}
+	}
+
+	/* p50, p95 and p99 in milliseconds */
+	private static String percentiles(long[] nanos) {
+		if (nanos.length == 0)
+			return "-";
+		Arrays.sort(nanos);
+		return String.format("%.1f / %.1f / %.1f ms", percentile(nanos, 50) / 1e6, percentile(nanos, 95) / 1e6,
+							 percentile(nanos, 99) / 1e6);
+	}
+
+	/* nearest rank, the values sorted */
+	private static long percentile(long[] sorted, int p) {
+		int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+		return sorted[Math.max(rank, 1) - 1];
+	}
+}
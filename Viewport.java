@@ -0,0 +1,128 @@
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+
+public class Viewport {
+
+	/*
+	 * Visible area of the complex plane.
+	 * The centre is kept as a BigDecimal so the view can be zoomed
+	 * far past the precision of a double, the size of the view only
+	 * needs a double since it is never added to the centre in double.
+	 */
+
+	private final BigDecimal centerRe;
+	private final BigDecimal centerIm;
+	private final double width, height; // size in the complex plane
+
+	// bounds rounded to doubles, stored once since the renderer reads them for every pixel
+	private final double xmin, xmax, ymin, ymax;
+
+	public Viewport(BigDecimal centerRe, BigDecimal centerIm, double width, double height) {
+		this.centerRe = centerRe;
+		this.centerIm = centerIm;
+		this.width = width;
+		this.height = height;
+
+		double re = centerRe.doubleValue();
+		double im = centerIm.doubleValue();
+		xmin = re - width / 2;
+		xmax = re + width / 2;
+		ymin = im - height / 2;
+		ymax = im + height / 2;
+	}
+
+	/* keep the double bounds as given so they can be compared with the fields */
+	private Viewport(double xmin, double xmax, double ymin, double ymax) {
+		this.xmin = xmin;
+		this.xmax = xmax;
+		this.ymin = ymin;
+		this.ymax = ymax;
+		width = xmax - xmin;
+		height = ymax - ymin;
+
+		BigDecimal two = BigDecimal.valueOf(2);
+		centerRe = new BigDecimal(xmin).add(new BigDecimal(xmax)).divide(two);
+		centerIm = new BigDecimal(ymin).add(new BigDecimal(ymax)).divide(two);
+	}
+
+	public static Viewport fromBounds(double xmin, double xmax, double ymin, double ymax) {
+		return new Viewport(Math.min(xmin, xmax), Math.max(xmin, xmax),
+							Math.min(ymin, ymax), Math.max(ymin, ymax));
+	}
+
+	/* same centre with a different size */
+	public Viewport resize(double width, double height) {
+		return new Viewport(centerRe, centerIm, width, height);
+	}
+
+	/*
+	 * Zoom on the rectangle between two pixels of a pixelWidth x pixelHeight image,
+	 * the new centre is computed in BigDecimal from the pixel offsets
+	 */
+	public Viewport zoom(double x0, double y0, double x1, double y1, int pixelWidth, int pixelHeight) {
+		double offsetRe = ((x0 + x1) / 2 / pixelWidth - 0.5) * width;
+		double offsetIm = -((y0 + y1) / 2 / pixelHeight - 0.5) * height;
+
+		return new Viewport(centerRe.add(new BigDecimal(offsetRe)),
+							centerIm.add(new BigDecimal(offsetIm)),
+							Math.abs(x1 - x0) / pixelWidth * width,
+							Math.abs(y1 - y0) / pixelHeight * height);
+	}
+
+	/*
+	 * Same size moved so the image follows a drag of (dx, dy) pixels,
+	 * the centre is moved in BigDecimal by whole pixels
+	 */
+	public Viewport pan(int dx, int dy, int pixelWidth, int pixelHeight) {
+		double offsetRe = -dx * (width / pixelWidth);
+		double offsetIm = dy * (height / pixelHeight);
+
+		return new Viewport(centerRe.add(new BigDecimal(offsetRe)),
+							centerIm.add(new BigDecimal(offsetIm)),
+							width, height);
+	}
+
+	/* enough significant digits to separate pixels, plus some margin */
+	public MathContext precision(int pixelWidth) {
+		double spacing = width / pixelWidth;
+		int digits = (int)Math.ceil(-Math.log10(spacing)) + 20;
+		return new MathContext(Math.max(digits, 20));
+	}
+
+	public BigDecimal getCenterRe() {
+		return centerRe;
+	}
+
+	public BigDecimal getCenterIm() {
+		return centerIm;
+	}
+
+	public double getWidth() {
+		return width;
+	}
+
+	public double getHeight() {
+		return height;
+	}
+
+	public double getXmin() {
+		return xmin;
+	}
+
+	public double getXmax() {
+		return xmax;
+	}
+
+	public double getYmin() {
+		return ymin;
+	}
+
+	public double getYmax() {
+		return ymax;
+	}
+
+	public boolean hasBounds(double xmin, double xmax, double ymin, double ymax) {
+		return this.xmin == xmin && this.xmax == xmax && this.ymin == ymin && this.ymax == ymax;
+	}
+}
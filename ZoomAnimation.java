@@ -0,0 +1,671 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class ZoomAnimation {
+
+	/*
+	 * Renders the frames of a zoom video from a few keyframes, headless.
+	 *
+	 * java ZoomAnimation -keys keys.txt [options]
+	 *   -o prefix          numbered PNGs prefix00000.png, prefix00001.png... (default frame)
+	 *   -raw file          raw RGB24 frames to a file instead, - for the standard output,
+	 *                      e.g. | ffmpeg -f rawvideo -pix_fmt rgb24 -s 1280x720 -r 30 -i - zoom.mp4
+	 *   -size WxH          size of the frames (default 1280x720)
+	 *   -fpo n             frames per octave, the zoom doubles every n frames (default 30)
+	 *   -julia re,im       zoom on the julia set of this constant instead of the mandelbrot set
+	 *   -threads n         number of workers (default one per core)
+	 *   -concurrent n      frames computed at once (default 3)
+	 *   -noreuse           compute every pixel of every frame
+	 *   -farm host:port,...   compute the frames on these FarmWorker processes, see RenderFarm,
+	 *                      the frames in flight keep all of them busy but nothing is copied
+	 *
+	 * Keyframes, one per line: centreRe centreIm width maxIter [palette]
+	 * The zoom goes at a constant speed of fpo frames per octave, so the width
+	 * of each keyframe is rounded to the nearest frame, the centre moves so the
+	 * next keyframe stays still on screen while zooming, and the number of
+	 * iterations follows linearly. A keyframe with the width of the one before
+	 * is panned to at one width per octave of frames.
+	 *
+	 * Frames go through three stages joined by bounded queues: several frames
+	 * are computed at once on the workers, then coloured, then encoded in order.
+	 * No more than a few frames are in flight, the computing waits for the encoding.
+	 *
+	 * The widths of frames an octave apart are exactly in a ratio of 2, and the
+	 * pixels are on the grid of the renderer anchored at the origin, so every
+	 * other pixel of every other row of a frame is exactly a pixel of the frame
+	 * an octave before and is copied instead of computed (a quarter of the
+	 * overlap). While panning the frames have the same grid and everything they
+	 * share with the frame before is copied. Only with plain doubles, and points
+	 * found bounded are computed again when the number of iterations grows.
+	 */
+
+	/* octaves of zoom it takes to pan one width of the view */
+	private static final double PAN_OCTAVES = 1.0;
+	private static final long PROGRESS_NANOS = 2000000000L;
+
+	private File keyFile;
+	private String prefix = "frame";
+	private String raw; // file or - for the raw stream
+	private int width = 1280, height = 720;
+	private int framesPerOctave = 30;
+	private Complex julia;
+	private int threads = RenderEngine.defaultParallelism();
+	private int concurrent = 3;
+	private boolean reuse = true;
+	private String farmAddresses;
+	private RenderFarm farm;
+
+	private final List<Frame> frames = new ArrayList<Frame>();
+	private volatile Throwable failure;
+	private Thread mainThread;
+
+	/* a frame of the video, the fields after done are guarded by ZoomAnimation.this */
+	private class Frame {
+
+		final int index;
+		final Viewport view;
+		final int maxIter;
+		final Palette palette;
+		final boolean deep; // past plain doubles
+		DeltaKernel deepKernel; // only while it is computed
+
+		/* pixel grid, as in the renderer */
+		final double spacingX, spacingY;
+		final long originX, originY;
+
+		/* frame this one copies pixels from: lattice index i is its i * mul / div when div divides i */
+		Frame source;
+		int mul = 1, div = 1;
+
+		/* part of the counts kept for the frames copying from this one */
+		int consumers = 0;
+		int cropX, cropY, cropW, cropH;
+		int[] crop;
+
+		int[] counts;
+		int[] rgb;
+		int reused; // pixels copied
+		boolean done = false; // counts computed
+
+		Frame(int index, Viewport view, int maxIter, Palette palette) {
+			this.index = index;
+			this.view = view;
+			this.maxIter = maxIter;
+			this.palette = palette;
+			spacingX = view.getWidth() / width;
+			spacingY = view.getHeight() / height;
+			originX = (long) Math.rint(view.getXmin() / spacingX);
+			originY = (long) Math.rint(view.getYmax() / spacingY);
+
+			deep = julia == null && PrecisionTier.forView(view, width, height) != PrecisionTier.DOUBLE;
+		}
+
+		private DeltaKernel deepKernel() {
+			return (PrecisionTier.forView(view, width, height) == PrecisionTier.DOUBLE_DOUBLE)
+				   ? new DoubleDouble(view) : ReferenceOrbit.forView(view, width, height, maxIter);
+		}
+
+		/* copy from f if its grid holds every other point of this one, the same or every other one */
+		boolean copyFrom(Frame f) {
+			if (deep || f.deep)
+				return false;
+			if (f.spacingX == spacingX && f.spacingY == spacingY) {
+				mul = 1;
+				div = 1;
+			} else if (f.spacingX == spacingX * 2 && f.spacingY == spacingY * 2) {
+				mul = 1;
+				div = 2;
+			} else if (f.spacingX * 2 == spacingX && f.spacingY * 2 == spacingY) {
+				mul = 2;
+				div = 1;
+			} else {
+				return false;
+			}
+
+			// the part of f this frame covers, added to what f keeps
+			long x0 = Math.floorDiv(originX + div - 1, div) * mul - f.originX;
+			long x1 = Math.floorDiv(originX + width - 1, div) * mul - f.originX;
+			long y0 = f.originY - Math.floorDiv(originY, div) * mul;
+			long y1 = f.originY - Math.floorDiv(originY - height + 1 + div - 1, div) * mul;
+			x0 = Math.max(x0, 0);
+			y0 = Math.max(y0, 0);
+			x1 = Math.min(x1, width - 1);
+			y1 = Math.min(y1, height - 1);
+			if (x0 > x1 || y0 > y1)
+				return false;
+
+			if (f.consumers == 0) {
+				f.cropX = (int) x0;
+				f.cropY = (int) y0;
+				f.cropW = (int) (x1 - x0 + 1);
+				f.cropH = (int) (y1 - y0 + 1);
+			} else {
+				int cx1 = Math.max(f.cropX + f.cropW - 1, (int) x1);
+				int cy1 = Math.max(f.cropY + f.cropH - 1, (int) y1);
+				f.cropX = Math.min(f.cropX, (int) x0);
+				f.cropY = Math.min(f.cropY, (int) y0);
+				f.cropW = cx1 - f.cropX + 1;
+				f.cropH = cy1 - f.cropY + 1;
+			}
+			f.consumers++;
+			source = f;
+			return true;
+		}
+	}
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		ZoomAnimation animation = new ZoomAnimation();
+		try {
+			animation.parse(args);
+			animation.readKeys();
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("usage: java ZoomAnimation -keys keys.txt [-o prefix | -raw file] [-size WxH] [-fpo n]");
+			System.err.println("                          [-julia re,im] [-threads n] [-concurrent n] [-noreuse]");
+			System.err.println("                          [-farm host:port,...]");
+			System.exit(1);
+		} catch (IOException e) {
+			System.err.println("Could not read " + animation.keyFile + ": " + e.getMessage());
+			System.exit(1);
+		}
+
+		try {
+			animation.run();
+		} catch (IOException e) {
+			System.err.println("Could not write the frames: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String option = args[i];
+			if (option.equals("-noreuse")) {
+				reuse = false;
+				continue;
+			}
+			if (i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value for " + option);
+			String value = args[++i];
+
+			try {
+				switch (option) {
+				case "-keys":
+					keyFile = new File(value);
+					break;
+				case "-o":
+					prefix = value;
+					break;
+				case "-raw":
+					raw = value;
+					break;
+				case "-size":
+					String[] size = value.toLowerCase().split("x");
+					width = Integer.parseInt(size[0]);
+					height = Integer.parseInt(size[1]);
+					break;
+				case "-fpo":
+					framesPerOctave = Integer.parseInt(value);
+					break;
+				case "-julia":
+					String[] c = value.split(",");
+					julia = new Complex(Double.parseDouble(c[0].trim()), Double.parseDouble(c[1].trim()));
+					break;
+				case "-threads":
+					threads = Integer.parseInt(value);
+					break;
+				case "-concurrent":
+					concurrent = Integer.parseInt(value);
+					break;
+				case "-farm":
+					farmAddresses = value;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown option " + option);
+				}
+			} catch (NumberFormatException | IndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("Incorrect value for " + option + ": " + value);
+			}
+		}
+
+		if (keyFile == null)
+			throw new IllegalArgumentException("No keyframes given");
+		if (width <= 0 || height <= 0 || framesPerOctave <= 0 || threads <= 0 || concurrent <= 0)
+			throw new IllegalArgumentException("Sizes, frames per octave, threads and frames at once have to be positive");
+	}
+
+	/* read the keyframes and lay out every frame between them */
+	void readKeys() throws IOException {
+		List<String[]> keys = new ArrayList<String[]>();
+		try (BufferedReader in = new BufferedReader(new FileReader(keyFile))) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (!line.isEmpty() && !line.startsWith("#"))
+					keys.add(line.split("\\s+"));
+			}
+		}
+		if (keys.isEmpty())
+			throw new IllegalArgumentException("No keyframe in " + keyFile);
+
+		BigDecimal re = null, im = null;
+		double w = 0;
+		int iter = 0;
+		Palette palette = null;
+		for (String[] key : keys) {
+			BigDecimal nextRe, nextIm;
+			double nextWidth;
+			int nextIter;
+			Palette nextPalette = Palette.CLASSIC;
+			try {
+				nextRe = new BigDecimal(key[0]);
+				nextIm = new BigDecimal(key[1]);
+				nextWidth = Double.parseDouble(key[2]);
+				nextIter = Integer.parseInt(key[3]);
+			} catch (NumberFormatException | IndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("Incorrect keyframe: " + String.join(" ", key));
+			}
+			if (key.length > 4) {
+				nextPalette = null;
+				for (Palette p : Palette.getPalettes())
+					if (p.getName().equalsIgnoreCase(key[4]))
+						nextPalette = p;
+				if (nextPalette == null)
+					throw new IllegalArgumentException("Unknown palette " + key[4]);
+			}
+			if (!(nextWidth > 0) || nextIter <= 0)
+				throw new IllegalArgumentException("Incorrect keyframe: " + String.join(" ", key));
+
+			if (re != null)
+				w = addSegment(re, im, w, iter, palette, nextRe, nextIm, nextWidth, nextIter);
+			else
+				w = nextWidth;
+			re = nextRe;
+			im = nextIm;
+			iter = nextIter;
+			palette = nextPalette;
+		}
+		addFrame(re, im, w, iter, palette);
+	}
+
+	/*
+	 * Frames from the keyframe a (included) to b (excluded), every octave of the
+	 * zoom halving the width exactly.
+	 * @return the width the frame of b gets, the one asked for rounded to a frame
+	 */
+	private double addSegment(BigDecimal reA, BigDecimal imA, double widthA, int iterA, Palette palette,
+							  BigDecimal reB, BigDecimal imB, double widthB, int iterB) {
+		double octaves = Math.abs(Math.log(widthA / widthB) / Math.log(2));
+		int zoomFrames = (int) Math.round(octaves * framesPerOctave);
+
+		// panning at the same width, one width per PAN_OCTAVES
+		double distance = Math.hypot(reB.subtract(reA).doubleValue(), imB.subtract(imA).doubleValue());
+		int panFrames = (int) Math.round(distance / widthA * PAN_OCTAVES * framesPerOctave);
+
+		int n = Math.max(zoomFrames, panFrames);
+		if (n == 0)
+			return widthA;
+
+		double step = (widthB < widthA) ? 0.5 : 2.0;
+		double[] widths = new double[n + 1];
+		for (int j = 0; j <= n; j++) {
+			if (zoomFrames == 0)
+				widths[j] = widthA;
+			else if (j >= framesPerOctave && n == zoomFrames)
+				widths[j] = widths[j - framesPerOctave] * step;
+			else
+				widths[j] = widthA * Math.pow(step, (double) j / framesPerOctave * zoomFrames / n);
+		}
+		// the pan may be longer than the zoom, the width then moves slower and is not halved exactly
+		double end = widths[n];
+
+		MathContext mc = MathContext.DECIMAL128;
+		for (int j = 0; j < n; j++) {
+			// zooming the next keyframe stays still on screen, panning it moves evenly
+			double s = (zoomFrames == 0 || widthA == end) ? (double) j / n : (widthA - widths[j]) / (widthA - end);
+			BigDecimal t = new BigDecimal(s);
+			BigDecimal re = reA.add(reB.subtract(reA).multiply(t, mc));
+			BigDecimal im = imA.add(imB.subtract(imA).multiply(t, mc));
+			int iter = (int) Math.round(iterA + (iterB - iterA) * (double) j / n);
+			addFrame(re, im, widths[j], iter, palette);
+		}
+		return end;
+	}
+
+	/* width of the view of every frame, in order */
+	double[] frameWidths() {
+		double[] widths = new double[frames.size()];
+		for (int i = 0; i < widths.length; i++)
+			widths[i] = frames.get(i).view.getWidth();
+		return widths;
+	}
+
+	private void addFrame(BigDecimal re, BigDecimal im, double w, int iter, Palette palette) {
+		// the height computed the same way for every frame keeps it exactly halved too
+		Viewport view = new Viewport(re, im, w, w * height / width);
+		frames.add(new Frame(frames.size(), view, iter, palette));
+	}
+
+	private void run() throws IOException {
+		if (farmAddresses != null)
+			farm = RenderFarm.connect(farmAddresses);
+
+		// the frames to copy from are picked now so each one knows how much to keep
+		if (reuse && farm == null) {
+			for (Frame f : frames) {
+				if (f.index > 0 && f.copyFrom(frames.get(f.index - 1)))
+					continue;
+				if (f.index >= framesPerOctave)
+					f.copyFrom(frames.get(f.index - framesPerOctave));
+			}
+		}
+
+		mainThread = Thread.currentThread();
+		int window = concurrent + 2; // frames in flight, computed, coloured or waiting to be written
+		final BlockingQueue<Frame> computed = new ArrayBlockingQueue<Frame>(window);
+		final BlockingQueue<Frame> coloured = new ArrayBlockingQueue<Frame>(window);
+		final Semaphore inFlight = new Semaphore(window);
+		final AtomicInteger next = new AtomicInteger();
+		final RenderEngine engine = new RenderEngine(threads);
+
+		// compute, several frames at once sharing the workers
+		for (int i = 0; i < concurrent; i++) {
+			startStage("compute-" + i, new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						while (true) {
+							inFlight.acquire();
+							int i = next.getAndIncrement();
+							if (i >= frames.size())
+								return;
+							Frame f = frames.get(i);
+							compute(engine, f);
+							computed.put(f);
+						}
+					} catch (InterruptedException e) {
+						// stopped
+					}
+				}
+			});
+		}
+
+		// colour
+		startStage("colour", new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					for (int i = 0; i < frames.size(); i++) {
+						Frame f = computed.take();
+						colour(f);
+						coloured.put(f);
+					}
+				} catch (InterruptedException e) {
+					// stopped
+				}
+			}
+		});
+
+		// encode, in order
+		OutputStream rawOut = null;
+		if (raw != null)
+			rawOut = new BufferedOutputStream(raw.equals("-") ? System.out : new FileOutputStream(raw), 1 << 20);
+		try {
+			TreeMap<Integer, Frame> waiting = new TreeMap<Integer, Frame>();
+			long start = System.nanoTime(), lastReport = start;
+			long pixels = 0, reused = 0;
+			for (int i = 0; i < frames.size(); i++) {
+				while (!waiting.containsKey(i)) {
+					Frame f = coloured.take();
+					waiting.put(f.index, f);
+				}
+				Frame f = waiting.remove(i);
+				write(f, rawOut);
+				inFlight.release();
+
+				pixels += (long) width * height;
+				reused += f.reused;
+				long now = System.nanoTime();
+				if (now - lastReport >= PROGRESS_NANOS || i == frames.size() - 1) {
+					lastReport = now;
+					double seconds = (now - start) / 1e9;
+					System.err.printf("%d/%d frames, %.2f frames/s, %.0f%% of the pixels copied, %.0fs left%n",
+									  i + 1, frames.size(), (i + 1) / seconds, 100.0 * reused / pixels,
+									  (frames.size() - i - 1) * seconds / (i + 1));
+				}
+			}
+		} catch (InterruptedException e) {
+			if (failure instanceof IOException)
+				throw (IOException) failure;
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException) failure;
+			if (failure instanceof Error)
+				throw (Error) failure;
+			throw new IOException("Interrupted");
+		} finally {
+			if (rawOut != null)
+				rawOut.close();
+			engine.shutdown();
+			if (farm != null)
+				farm.close();
+		}
+	}
+
+	/* a stage thread stops the animation if it fails */
+	private void startStage(String name, final Runnable stage) {
+		Thread thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					stage.run();
+				} catch (Throwable t) {
+					failure = t;
+					mainThread.interrupt();
+				}
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void compute(RenderEngine engine, final Frame f) throws InterruptedException {
+		final Frame source = f.source;
+		if (source != null) {
+			synchronized (this) {
+				while (!source.done)
+					wait();
+			}
+		}
+
+		f.counts = new int[width * height];
+		if (farm != null) {
+			farmFrame(f);
+		} else {
+			if (f.deep)
+				f.deepKernel = f.deepKernel();
+			final AtomicInteger reused = new AtomicInteger();
+			engine.render(width, height, new RenderEngine.TilePainter() {
+
+				@Override
+				public void paintTile(int x, int y, int w, int h) {
+					reused.addAndGet(computeTile(f, source, x, y, w, h));
+				}
+
+				@Override
+				public void tileDone(int x, int y, int w, int h, double percent) {
+				}
+			});
+			f.reused = reused.get();
+			f.deepKernel = null;
+		}
+
+		// keep what the next frames copy, the counts go once coloured
+		int[] crop = null;
+		if (f.consumers > 0) {
+			crop = new int[f.cropW * f.cropH];
+			for (int y = 0; y < f.cropH; y++)
+				System.arraycopy(f.counts, (f.cropY + y) * width + f.cropX, crop, y * f.cropW, f.cropW);
+		}
+
+		synchronized (this) {
+			f.crop = crop;
+			f.done = true;
+			if (source != null && --source.consumers == 0)
+				source.crop = null;
+			notifyAll();
+		}
+	}
+
+	/* every tile of the frame on the farm, the ones it fails computed here */
+	private void farmFrame(Frame f) throws InterruptedException {
+		RenderFarm.Frame frame = new RenderFarm.Frame(
+				(julia == null) ? FractalRenderer.TYPE_MANDELBROT : FractalRenderer.TYPE_JULIA, f.view, width, height,
+				f.maxIter, (julia != null) ? julia.getRe() : 0.0, (julia != null) ? julia.getIm() : 0.0);
+
+		int size = RenderEngine.TILE_SIZE;
+		List<RenderFarm.Tile> tiles = new ArrayList<RenderFarm.Tile>();
+		for (int y = 0; y < height; y += size)
+			for (int x = 0; x < width; x += size)
+				tiles.add(farm.submit(frame, x, y, Math.min(size, width - x), Math.min(size, height - y)));
+
+		for (RenderFarm.Tile tile : tiles) {
+			tile.await();
+			int[] counts = tile.getCounts();
+			if (counts == null) {
+				counts = new int[tile.getWidth() * tile.getHeight()];
+				frame.computeTile(tile.getX(), tile.getY(), tile.getWidth(), tile.getHeight(), counts);
+			}
+			for (int y = 0; y < tile.getHeight(); y++)
+				System.arraycopy(counts, y * tile.getWidth(), f.counts, (tile.getY() + y) * width + tile.getX(),
+								 tile.getWidth());
+		}
+	}
+
+	/*
+	 * counts of a tile of f, the pixels on the grid of source copied from it
+	 * @return the number of pixels copied
+	 */
+	private int computeTile(Frame f, Frame source, int x0, int y0, int w, int h) {
+		int[] counts = f.counts;
+		int[] crop = (source != null) ? source.crop : null;
+		int copied = 0;
+
+		double[] re = new double[w];
+		int[] xs = new int[w]; // columns computed
+		int[] row = new int[w];
+		RowKernel kernel = EscapeTime.getRowKernel();
+
+		for (int y = y0; y < y0 + h; y++) {
+			int offset = y * width;
+
+			// pixels of this row on the grid of source
+			long sy = -1;
+			long j = f.originY - y;
+			if (crop != null && Math.floorMod(j, f.div) == 0) {
+				sy = source.originY - Math.floorDiv(j, f.div) * f.mul - source.cropY;
+				if (sy < 0 || sy >= source.cropH)
+					sy = -1;
+			}
+
+			int n = 0;
+			for (int x = x0; x < x0 + w; x++) {
+				long i = f.originX + x;
+				if (sy >= 0 && Math.floorMod(i, f.div) == 0) {
+					long sx = Math.floorDiv(i, f.div) * f.mul - source.originX - source.cropX;
+					if (sx >= 0 && sx < source.cropW) {
+						// escaped it escapes the same, bounded only if no more iterations are asked now
+						int count = crop[(int) sy * source.cropW + (int) sx];
+						if (count < source.maxIter || f.maxIter <= source.maxIter) {
+							counts[offset + x] = Math.min(count, f.maxIter);
+							copied++;
+							continue;
+						}
+					}
+				}
+				xs[n++] = x;
+			}
+			if (n == 0)
+				continue;
+
+			if (f.deepKernel != null) {
+				// offsets from the centre of the view, like the renderer
+				double dim = (height / 2.0 - y) * f.spacingY;
+				for (int k = 0; k < n; k++)
+					counts[offset + xs[k]] = f.deepKernel.iterate((xs[k] - width / 2.0) * f.spacingX, dim, f.maxIter);
+				continue;
+			}
+
+			for (int k = 0; k < n; k++)
+				re[k] = (f.originX + xs[k]) * f.spacingX;
+			double im = (f.originY - y) * f.spacingY;
+			if (julia == null)
+				kernel.mandelbrot(re, im, n, f.maxIter, row, null);
+			else
+				kernel.julia(re, im, n, julia.getRe(), julia.getIm(), f.maxIter, row, null);
+			for (int k = 0; k < n; k++)
+				counts[offset + xs[k]] = row[k];
+		}
+		return copied;
+	}
+
+	private void colour(Frame f) {
+		int[] lut = new int[f.maxIter + 1];
+		for (int i = 0; i < f.maxIter; i++)
+			lut[i] = f.palette.getColor(i);
+		lut[f.maxIter] = f.palette.getInside(f.maxIter);
+
+		int[] counts = f.counts;
+		int[] rgb = new int[counts.length];
+		for (int i = 0; i < counts.length; i++)
+			rgb[i] = lut[Math.min(counts[i], f.maxIter)];
+		f.rgb = rgb;
+		f.counts = null;
+	}
+
+	private void write(Frame f, OutputStream rawOut) throws IOException {
+		int[] rgb = f.rgb;
+		f.rgb = null;
+
+		if (rawOut != null) {
+			byte[] bytes = new byte[3 * width];
+			for (int y = 0; y < height; y++) {
+				for (int x = 0, i = y * width; x < width; x++, i++) {
+					bytes[3 * x] = (byte) (rgb[i] >> 16);
+					bytes[3 * x + 1] = (byte) (rgb[i] >> 8);
+					bytes[3 * x + 2] = (byte) rgb[i];
+				}
+				rawOut.write(bytes);
+			}
+			return;
+		}
+
+		File file = new File(String.format("%s%05d.png", prefix, f.index));
+		PngWriter png = new PngWriter(new FileOutputStream(file), width, height);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			System.arraycopy(rgb, y * width, row, 0, width);
+			png.writeRow(row);
+		}
+		png.close();
+	}
+}
@@ -0,0 +1,115 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+
+final class App {
+
+	/*
+	 * The explorer classes are in the default package, which cannot be
+	 * imported from a named package (and JMH refuses benchmarks in the
+	 * default package), so they are reached through method handles.
+	 * The handles are static final so the JIT inlines them like direct calls.
+	 * Explorer types are erased to Object so invokeExact can be used.
+	 */
+
+	static final MethodHandle MANDELBROT;		// (double re, double im, int maxIter) int
+	static final MethodHandle JULIA;			// (double zr, double zi, double cr, double ci, int maxIter) int
+
+	static final MethodHandle NEW_COMPLEX;		// (double re, double im) Complex
+	static final MethodHandle SQUARE;			// (Complex) Complex
+	static final MethodHandle ADD;				// (Complex, Complex) Complex
+	static final MethodHandle MODULUS;			// (Complex) double
+
+	static final MethodHandle NEW_VIEWPORT;		// (BigDecimal re, BigDecimal im, double width, double height) Viewport
+	static final MethodHandle NEW_ENGINE;		// (int threads) RenderEngine
+	static final MethodHandle SHUTDOWN;			// (RenderEngine) void
+	static final MethodHandle NEW_RENDERER;		// (int type, RenderEngine) FractalRenderer
+	static final MethodHandle SET_SIZE;			// (FractalRenderer, int w, int h) void
+	static final MethodHandle SET_VIEW;			// (FractalRenderer, Viewport) void
+	static final MethodHandle SET_MAX_ITER;		// (FractalRenderer, int) void
+	static final MethodHandle SET_JULIA_POINT;	// (FractalRenderer, double re, double im) void
+	static final MethodHandle RENDER;			// (FractalRenderer) boolean
+	static final MethodHandle PIXEL_TO_COMPLEX;	// (FractalRenderer, double x, double y) Complex
+	static final MethodHandle PIXEL_TO_RE;		// (FractalRenderer, double x) double
+	static final MethodHandle GET_COLOR;		// (FractalRenderer, int iter) int
+
+	static final int TYPE_MANDELBROT = 1;
+	static final int TYPE_JULIA = 2;
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			Class<?> escapeTime = Class.forName("EscapeTime");
+			Class<?> complex = Class.forName("Complex");
+			Class<?> viewport = Class.forName("Viewport");
+			Class<?> engine = Class.forName("RenderEngine");
+			Class<?> renderer = Class.forName("FractalRenderer");
+
+			MANDELBROT = lookup.findStatic(escapeTime, "mandelbrot",
+					MethodType.methodType(int.class, double.class, double.class, int.class));
+			JULIA = lookup.findStatic(escapeTime, "julia",
+					MethodType.methodType(int.class, double.class, double.class, double.class, double.class, int.class));
+
+			NEW_COMPLEX = erase(lookup.findConstructor(complex,
+					MethodType.methodType(void.class, double.class, double.class)));
+			SQUARE = erase(lookup.findVirtual(complex, "square", MethodType.methodType(complex)));
+			ADD = erase(lookup.findVirtual(complex, "add", MethodType.methodType(complex, complex)));
+			MODULUS = erase(lookup.findVirtual(complex, "getModulus", MethodType.methodType(double.class)));
+
+			NEW_VIEWPORT = erase(lookup.findConstructor(viewport,
+					MethodType.methodType(void.class, BigDecimal.class, BigDecimal.class, double.class, double.class)));
+			NEW_ENGINE = erase(lookup.findConstructor(engine, MethodType.methodType(void.class, int.class)));
+			SHUTDOWN = erase(lookup.findVirtual(engine, "shutdown", MethodType.methodType(void.class)));
+			NEW_RENDERER = erase(lookup.findConstructor(renderer,
+					MethodType.methodType(void.class, int.class, engine)));
+			SET_SIZE = erase(lookup.findVirtual(renderer, "setSize",
+					MethodType.methodType(void.class, int.class, int.class)));
+			SET_VIEW = erase(lookup.findVirtual(renderer, "setView", MethodType.methodType(void.class, viewport)));
+			SET_MAX_ITER = erase(lookup.findVirtual(renderer, "setMaxIter", MethodType.methodType(void.class, int.class)));
+			SET_JULIA_POINT = erase(lookup.findVirtual(renderer, "setJuliaPoint",
+					MethodType.methodType(void.class, double.class, double.class)));
+			RENDER = erase(lookup.findVirtual(renderer, "render", MethodType.methodType(boolean.class)));
+			PIXEL_TO_COMPLEX = erase(lookup.findVirtual(renderer, "pixel2Complex",
+					MethodType.methodType(complex, double.class, double.class)));
+			PIXEL_TO_RE = erase(lookup.findVirtual(renderer, "pixel2Re",
+					MethodType.methodType(double.class, double.class)));
+
+			// private to the renderer, both classes are in the unnamed module
+			GET_COLOR = erase(MethodHandles.privateLookupIn(renderer, lookup).findVirtual(renderer, "getColor",
+					MethodType.methodType(int.class, int.class)));
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private App() {}
+
+	/* replace every explorer class in the type by Object */
+	private static MethodHandle erase(MethodHandle handle) {
+		MethodType type = handle.type();
+		for (int i = 0; i < type.parameterCount(); i++) {
+			if (!type.parameterType(i).isPrimitive() && type.parameterType(i) != BigDecimal.class)
+				type = type.changeParameterType(i, Object.class);
+		}
+		if (!type.returnType().isPrimitive())
+			type = type.changeReturnType(Object.class);
+		return handle.asType(type);
+	}
+
+	static Object viewport(View view, int width, int height) throws Throwable {
+		return (Object) NEW_VIEWPORT.invokeExact(new BigDecimal(view.re), new BigDecimal(view.im),
+												 view.width, view.width * height / width);
+	}
+
+	static Object renderer(int type, Object engine, View view, int width, int height, int maxIter) throws Throwable {
+		Object renderer = (Object) NEW_RENDERER.invokeExact(type, engine);
+		SET_SIZE.invokeExact(renderer, width, height);
+		SET_VIEW.invokeExact(renderer, viewport(view, width, height));
+		SET_MAX_ITER.invokeExact(renderer, maxIter);
+		SET_JULIA_POINT.invokeExact(renderer, View.JULIA_RE, View.JULIA_IM);
+		return renderer;
+	}
+}
@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/* cost of the Complex operations, pixel mapping and colouring of one pixel */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComplexBenchmark {
+
+	private static final int WIDTH = 1920;
+	private static final int HEIGHT = 1080;
+
+	private Object z;
+	private Object engine, renderer;
+	private int x, y, iter;
+
+	@Setup
+	public void setup() throws Throwable {
+		z = (Object) App.NEW_COMPLEX.invokeExact(0.3, -0.4);
+		engine = (Object) App.NEW_ENGINE.invokeExact(1);
+		renderer = App.renderer(App.TYPE_MANDELBROT, engine, View.ZOOMED_OUT, WIDTH, HEIGHT, 1000);
+	}
+
+	@TearDown
+	public void tearDown() throws Throwable {
+		App.SHUTDOWN.invokeExact(engine);
+	}
+
+	@Benchmark
+	public Object complexSquare() throws Throwable {
+		return (Object) App.SQUARE.invokeExact(z);
+	}
+
+	@Benchmark
+	public Object complexSquareAdd() throws Throwable {
+		return (Object) App.ADD.invokeExact((Object) App.SQUARE.invokeExact(z), z);
+	}
+
+	@Benchmark
+	public Object pixel2Complex() throws Throwable {
+		x = (x + 1) % WIDTH;
+		y = (y + 7) % HEIGHT;
+		return (Object) App.PIXEL_TO_COMPLEX.invokeExact(renderer, (double)x, (double)y);
+	}
+
+	@Benchmark
+	public double pixel2Re() throws Throwable {
+		x = (x + 1) % WIDTH;
+		return (double) App.PIXEL_TO_RE.invokeExact(renderer, (double)x);
+	}
+
+	@Benchmark
+	public void colour(Blackhole bh) throws Throwable {
+		iter = (iter + 1) % 1000;
+		bh.consume((int) App.GET_COLOR.invokeExact(renderer, iter));
+	}
+}
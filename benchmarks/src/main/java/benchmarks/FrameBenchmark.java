@@ -0,0 +1,49 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/* a whole frame rendered by FractalRenderer, low definition pass included */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameBenchmark {
+
+	@Param({"1920x1080", "3840x2160"})
+	public String resolution;
+
+	@Param({"1", "2", "4", "8", "16"})
+	public int threads;
+
+	@Param({"ZOOMED_OUT", "SEAHORSE_VALLEY"})
+	public View view;
+
+	@Param({"1000"})
+	public int maxIter;
+
+	@Param({"1"})	// 1 for mandelbrot, 2 for julia
+	public int type;
+
+	private Object engine, renderer;
+
+	@Setup
+	public void setup() throws Throwable {
+		String[] size = resolution.split("x");
+		engine = (Object) App.NEW_ENGINE.invokeExact(threads);
+		renderer = App.renderer(type, engine, view, Integer.parseInt(size[0]), Integer.parseInt(size[1]), maxIter);
+	}
+
+	@TearDown
+	public void tearDown() throws Throwable {
+		App.SHUTDOWN.invokeExact(engine);
+	}
+
+	@Benchmark
+	public boolean render() throws Throwable {
+		return (boolean) App.RENDER.invokeExact(renderer);
+	}
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/* escape time kernels on a 32x32 grid of points, the score is per point */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark {
+
+	private static final int GRID = 32;
+
+	@Param({"100", "1000", "10000"})
+	public int maxIter;
+
+	@Param({"ZOOMED_OUT", "SEAHORSE_VALLEY", "DEEP_INTERIOR"})
+	public View view;
+
+	private double[] re, im;
+
+	@Setup
+	public void setup() {
+		re = view.grid(GRID, false);
+		im = view.grid(GRID, true);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(GRID * GRID)
+	public int mandelbrot() throws Throwable {
+		int sum = 0;
+		for (int i = 0; i < re.length; i++)
+			sum += (int) App.MANDELBROT.invokeExact(re[i], im[i], maxIter);
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(GRID * GRID)
+	public int julia() throws Throwable {
+		int sum = 0;
+		for (int i = 0; i < re.length; i++)
+			sum += (int) App.JULIA.invokeExact(re[i], im[i], View.JULIA_RE, View.JULIA_IM, maxIter);
+		return sum;
+	}
+
+	/* the loop the kernel replaced, z = z.square().add(c) on Complex objects */
+	@Benchmark
+	@OperationsPerInvocation(GRID * GRID)
+	public int complexMandelbrot() throws Throwable {
+		int sum = 0;
+		for (int i = 0; i < re.length; i++) {
+			Object c = (Object) App.NEW_COMPLEX.invokeExact(re[i], im[i]);
+			Object z = (Object) App.NEW_COMPLEX.invokeExact(0.0, 0.0);
+			int count = 0;
+			while ((double) App.MODULUS.invokeExact(z) < 2.0 && count < maxIter) {
+				z = (Object) App.ADD.invokeExact((Object) App.SQUARE.invokeExact(z), c);
+				count++;
+			}
+			sum += count;
+		}
+		return sum;
+	}
+}
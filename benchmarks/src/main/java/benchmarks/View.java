@@ -0,0 +1,36 @@
+package benchmarks;
+
+public enum View {
+
+	/* views the benchmarks are run on, centre and width in the complex plane */
+
+	ZOOMED_OUT("-0.5", "0.0", 4.0),
+	SEAHORSE_VALLEY("-0.75", "0.1", 0.05),
+	DEEP_INTERIOR("-0.1226", "0.7449", 0.01);	// inside the period 3 bulb
+
+	/* constant used for the julia benchmarks */
+	static final double JULIA_RE = -0.8;
+	static final double JULIA_IM = 0.156;
+
+	final String re, im;
+	final double width;
+
+	View(String re, String im, double width) {
+		this.re = re;
+		this.im = im;
+		this.width = width;
+	}
+
+	/* grid of size x size points covering the view */
+	double[] grid(int size, boolean imaginary) {
+		double[] points = new double[size * size];
+		double cr = Double.parseDouble(re), ci = Double.parseDouble(im);
+		for (int y = 0; y < size; y++) {
+			for (int x = 0; x < size; x++) {
+				points[y * size + x] = imaginary ? ci + ((double)y / size - 0.5) * width
+												 : cr + ((double)x / size - 0.5) * width;
+			}
+		}
+		return points;
+	}
+}
@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+
+public class DoubleDoubleTest {
+
+	/*
+	 * Count of c iterated in BigDecimal far more precise than the kernels,
+	 * the same way as they count: the first n with |z_n|^2 >= 4, or maxIter
+	 */
+	static int bruteForce(BigDecimal cr, BigDecimal ci, int maxIter) {
+		MathContext mc = new MathContext(80);
+		BigDecimal four = new BigDecimal(4);
+		BigDecimal zr = BigDecimal.ZERO, zi = BigDecimal.ZERO;
+		for (int n = 0; n < maxIter; n++) {
+			BigDecimal zr2 = zr.multiply(zr, mc), zi2 = zi.multiply(zi, mc);
+			if (zr2.add(zi2, mc).compareTo(four) >= 0)
+				return n;
+			BigDecimal zri = zr.multiply(zi, mc);
+			zr = zr2.subtract(zi2, mc).add(cr, mc);
+			zi = zri.add(zri, mc).add(ci, mc);
+		}
+		return maxIter;
+	}
+
+	/* every pixel of a w x h view given as offsets from its centre, like the renderer */
+	static void assertMatchesBruteForce(DeltaKernel kernel, Viewport view, int w, int h, int maxIter) {
+		Set<Integer> counts = new HashSet<Integer>();
+		for (int y = 0; y < h; y++) {
+			double dci = (h / 2.0 - y) * view.getHeight() / h;
+			for (int x = 0; x < w; x++) {
+				double dcr = (x - w / 2.0) * view.getWidth() / w;
+				int expected = bruteForce(view.getCenterRe().add(new BigDecimal(dcr)),
+										  view.getCenterIm().add(new BigDecimal(dci)), maxIter);
+				assertEquals(expected, kernel.iterate(dcr, dci, maxIter), "count of pixel " + x + "," + y);
+				counts.add(expected);
+			}
+		}
+		// not a view of a single colour
+		assertTrue(counts.size() > 10, "only " + counts.size() + " different counts");
+	}
+
+	/*
+	 * c = i never escapes but its neighbours do, sooner the further they are,
+	 * so every zoom on it has a range of counts; they escape before rounding
+	 * errors can grow as large as the pixels
+	 */
+	static final String CENTER_RE = "0";
+	static final String CENTER_IM = "1";
+
+	static Viewport view(String re, String im, double width) {
+		return new Viewport(new BigDecimal(re), new BigDecimal(im), width, width * 3 / 4);
+	}
+
+	/* pixels a hundred times smaller than the ulp of their coordinates */
+	@Test
+	public void midDepthZoomMatchesBruteForce() {
+		Viewport view = view(CENTER_RE, CENTER_IM, 3e-17);
+		assertEquals(PrecisionTier.DOUBLE_DOUBLE, PrecisionTier.forView(view, 32, 24));
+		assertMatchesBruteForce(new DoubleDouble(view), view, 32, 24, 1000);
+	}
+
+	/* close to the deepest view double-double is picked for */
+	@Test
+	public void deepestDoubleDoubleZoomMatchesBruteForce() {
+		Viewport view = view(CENTER_RE, CENTER_IM, 1e-26);
+		assertEquals(PrecisionTier.DOUBLE_DOUBLE, PrecisionTier.forView(view, 32, 24));
+		assertMatchesBruteForce(new DoubleDouble(view), view, 32, 24, 1000);
+	}
+}
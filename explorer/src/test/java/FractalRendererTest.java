@@ -0,0 +1,199 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+public class FractalRendererTest {
+
+	private static final int WIDTH = 320, HEIGHT = 240, MAX_ITER = 500;
+
+	private RenderEngine engine;
+
+	@BeforeEach
+	public void startEngine() {
+		engine = new RenderEngine(2);
+	}
+
+	@AfterEach
+	public void stopEngine() {
+		engine.shutdown();
+	}
+
+	private FractalRenderer renderer(boolean subdivide, TileCache cache) {
+		FractalRenderer renderer = new FractalRenderer(FractalRenderer.TYPE_MANDELBROT, engine);
+		renderer.setSize(WIDTH, HEIGHT);
+		renderer.setMaxIter(MAX_ITER);
+		renderer.setSmooth(true);
+		renderer.setSubdivide(subdivide);
+		renderer.setTileCache(cache);
+		return renderer;
+	}
+
+	private static Viewport view(String re, String im, double width) {
+		return new Viewport(new BigDecimal(re), new BigDecimal(im), width, width * HEIGHT / WIDTH);
+	}
+
+	/*
+	 * pixels filled by the subdivision or loaded from the cache have no z of
+	 * their own, smooth colouring must not blend them with the z another
+	 * frame left at the same place; the frame is compared with one rendered
+	 * the same way from nothing, it has the same counts and colours exactly.
+	 * The subdivision fills a rectangle whose border has a single count, so
+	 * it differs from iterating every pixel where a filament crosses one, and
+	 * the rectangles depend on the tiles: the frame from nothing has a cache
+	 * too so its tiles follow the same grid.
+	 */
+	private void cachedFrameMatchesFreshFrame(boolean subdivide) {
+		Viewport seahorse = view("-0.745", "0.11", 0.04);
+		Viewport other = view("-1.25", "0.02", 0.3);
+
+		FractalRenderer warm = renderer(subdivide, new TileCache(64L << 20));
+		warm.setView(seahorse);
+		assertTrue(warm.render());
+		// leaves its own z in every pixel
+		warm.setView(other);
+		assertTrue(warm.render());
+		// every tile comes from the cache now
+		warm.setView(seahorse);
+		assertTrue(warm.render());
+
+		FractalRenderer plain = renderer(subdivide, new TileCache(64L << 20));
+		plain.setView(seahorse);
+		assertTrue(plain.render());
+
+		assertArrayEquals(plain.getIterBuffer(), warm.getIterBuffer());
+		assertArrayEquals(plain.getImage().getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH),
+						  warm.getImage().getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+	}
+
+	@Test
+	public void smoothColoursOfCachedPixelsMatchIteratedOnes() {
+		cachedFrameMatchesFreshFrame(false);
+	}
+
+	@Test
+	public void smoothColoursOfFilledAndCachedPixelsMatchIteratedOnes() {
+		cachedFrameMatchesFreshFrame(true);
+	}
+
+	private static void assertSameFrame(FractalRenderer expected, FractalRenderer actual) {
+		assertArrayEquals(expected.getIterBuffer(), actual.getIterBuffer());
+		assertArrayEquals(expected.getImage().getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH),
+						  actual.getImage().getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+	}
+
+	/* renderers read the property once, when they are made */
+	private FractalRenderer withSymmetry(boolean symmetry, int fractal) {
+		System.setProperty("fractal.nosymmetry", String.valueOf(!symmetry));
+		try {
+			FractalRenderer renderer = new FractalRenderer(fractal, engine);
+			renderer.setSize(WIDTH, HEIGHT);
+			renderer.setMaxIter(MAX_ITER);
+			renderer.setSmooth(true);
+			renderer.setSubdivide(false);
+			renderer.setTileCache(null);
+			return renderer;
+		} finally {
+			System.clearProperty("fractal.nosymmetry");
+		}
+	}
+
+	/* the half copied from its mirror image is exactly what iterating it gives */
+	@Test
+	public void symmetricViewsMatchPlainRender() {
+		// the real axis a third of the way up, and the origin off centre for the julia set
+		Viewport mandelbrot = view("-0.75", "-0.3", 2.5);
+		Viewport julia = view("0.2", "0.15", 2.4);
+
+		for (int fractal : new int[] { FractalRenderer.TYPE_MANDELBROT, FractalRenderer.TYPE_JULIA }) {
+			FractalRenderer mirrored = withSymmetry(true, fractal);
+			FractalRenderer plain = withSymmetry(false, fractal);
+			for (FractalRenderer renderer : new FractalRenderer[] { mirrored, plain }) {
+				renderer.setJuliaPoint(-0.8, 0.156);
+				renderer.setView((fractal == FractalRenderer.TYPE_JULIA) ? julia : mandelbrot);
+				assertTrue(renderer.render());
+			}
+			assertSameFrame(plain, mirrored);
+		}
+	}
+
+	/*
+	 * points still iterating when maxIter is raised carry on from their z;
+	 * without subdivision, which fills rectangles of the new frame around
+	 * the pixels known from the last one rather than the way it would from nothing
+	 */
+	@Test
+	public void raisedMaxIterMatchesFreshRender() {
+		Viewport seahorse = view("-0.745", "0.11", 0.04);
+		FractalRenderer resumed = renderer(false, null);
+		resumed.setMaxIter(MAX_ITER / 5);
+		resumed.setView(seahorse);
+		assertTrue(resumed.render());
+		resumed.setMaxIter(MAX_ITER);
+		assertTrue(resumed.render());
+
+		FractalRenderer fresh = renderer(false, null);
+		fresh.setView(seahorse);
+		assertTrue(fresh.render());
+		assertSameFrame(fresh, resumed);
+	}
+
+	/* frames cancelled part way leave counts the next frame keeps, it ends the same as one from nothing */
+	@Test
+	public void frameAfterCancelsMatchesFreshRender() throws InterruptedException {
+		Viewport seahorse = view("-0.745", "0.11", 0.04);
+		final FractalRenderer cancelled = renderer(false, null);
+		cancelled.setMaxIter(10 * MAX_ITER);
+		cancelled.setView(seahorse);
+		int stopped = 0;
+		for (int i = 1; i <= 3; i++) {
+			final long generation = engine.getGeneration();
+			final boolean[] done = new boolean[1];
+			Thread render = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					done[0] = cancelled.render(generation);
+				}
+			});
+			render.start();
+			Thread.sleep(5 * i);
+			cancelled.cancel();
+			render.join();
+			if (!done[0])
+				stopped++;
+		}
+		assertTrue(stopped > 0, "no frame was cancelled before it was done");
+		assertTrue(cancelled.render());
+
+		FractalRenderer fresh = renderer(false, null);
+		fresh.setMaxIter(10 * MAX_ITER);
+		fresh.setView(seahorse);
+		assertTrue(fresh.render());
+		assertSameFrame(fresh, cancelled);
+	}
+
+	/* the full frame starts from the pixels of the preview, they are the ones it would compute */
+	@Test
+	public void frameAfterPreviewMatchesFreshRender() {
+		Viewport julia = view("0", "0", 3.0);
+		for (int step : new int[] { 2, 4 }) {
+			FractalRenderer previewed = withSymmetry(true, FractalRenderer.TYPE_JULIA);
+			previewed.setJuliaPoint(-0.8, 0.156);
+			previewed.setView(julia);
+			assertTrue(previewed.renderPreview(engine.getGeneration(), step));
+			assertTrue(previewed.render());
+
+			FractalRenderer fresh = withSymmetry(true, FractalRenderer.TYPE_JULIA);
+			fresh.setJuliaPoint(-0.8, 0.156);
+			fresh.setView(julia);
+			assertTrue(fresh.render());
+			assertSameFrame(fresh, previewed);
+		}
+	}
+}
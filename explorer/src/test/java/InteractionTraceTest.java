@@ -0,0 +1,48 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class InteractionTraceTest {
+
+	@TempDir
+	Path dir;
+
+	private static int count(File file, String action) throws IOException {
+		int n = 0;
+		for (InteractionTrace.Action a : InteractionTrace.read(file))
+			if (a.action.equals(action))
+				n++;
+		return n;
+	}
+
+	/*
+	 * a zoom of the main frame echoes its number of iterations to the julia
+	 * panel once per field updated, none of them is an action of the user
+	 */
+	@Test
+	public void zoomRecordsNoIterations() throws IOException {
+		File file = dir.resolve("trace.txt").toFile();
+		InteractionTrace trace = new InteractionTrace(file);
+
+		FractalExplorerPanel julia = new FractalExplorerPanel(null, FractalRenderer.TYPE_JULIA, trace);
+		julia.setSize(64, 48);
+		julia.init();
+
+		int iter = julia.getMaxIter();
+		for (int i = 0; i < 5; i++)
+			julia.setMaxIter(iter);
+		assertEquals(1, InteractionTrace.read(file).size());
+		assertEquals(0, count(file, InteractionTrace.ITERATIONS));
+
+		// the number of iterations edited in the main frame is one
+		julia.setMaxIter(2 * iter);
+		julia.setMaxIter(2 * iter);
+		assertEquals(1, count(file, InteractionTrace.ITERATIONS));
+	}
+}
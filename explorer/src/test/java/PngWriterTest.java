@@ -0,0 +1,93 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+
+public class PngWriterTest {
+
+	private static BufferedImage writeAndRead(int[] rgb, int width, int height) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PngWriter png = new PngWriter(bytes, width, height);
+		int[] row = new int[width];
+		for (int y = 0; y < height; y++) {
+			System.arraycopy(rgb, y * width, row, 0, width);
+			png.writeRow(row);
+		}
+		png.close();
+		return ImageIO.read(new ByteArrayInputStream(bytes.toByteArray()));
+	}
+
+	private static void assertDecodesTo(int[] rgb, int width, int height) throws IOException {
+		BufferedImage image = writeAndRead(rgb, width, height);
+		assertEquals(width, image.getWidth());
+		assertEquals(height, image.getHeight());
+
+		int[] expected = new int[rgb.length];
+		for (int i = 0; i < rgb.length; i++)
+			expected[i] = 0xFF000000 | (rgb[i] & 0xFFFFFF);
+		assertArrayEquals(expected, image.getRGB(0, 0, width, height, null, 0, width));
+	}
+
+	/* noise does not deflate, it is cut into several IDAT chunks; the alpha byte is left out */
+	@Test
+	public void noiseDecodesWithImageIO() throws IOException {
+		int width = 800, height = 600;
+		Random random = new Random(1);
+		int[] rgb = new int[width * height];
+		for (int i = 0; i < rgb.length; i++)
+			rgb[i] = random.nextInt();
+		assertDecodesTo(rgb, width, height);
+	}
+
+	/* the Sub filter wraps around at every byte, a single pixel wide column and row too */
+	@Test
+	public void edgesDecodeWithImageIO() throws IOException {
+		int[] steps = { 0x000000, 0xFFFFFF, 0x010203, 0xFF00FF, 0x00FF00, 0x7F8081 };
+		assertDecodesTo(steps, steps.length, 1);
+		assertDecodesTo(steps, 1, steps.length);
+		assertDecodesTo(steps, 3, 2);
+	}
+
+	/* a fractal, mostly runs of the same colour */
+	@Test
+	public void frameDecodesWithImageIO() throws IOException {
+		RenderEngine engine = new RenderEngine(2);
+		try {
+			FractalRenderer renderer = new FractalRenderer(FractalRenderer.TYPE_MANDELBROT, engine);
+			renderer.setSize(320, 240);
+			renderer.setMaxIter(300);
+			renderer.setTileCache(null);
+			renderer.setView(new Viewport(new BigDecimal("-0.745"), new BigDecimal("0.11"), 0.04, 0.03));
+			assertTrue(renderer.render());
+			assertDecodesTo(renderer.getImage().getRGB(0, 0, 320, 240, null, 0, 320), 320, 240);
+		} finally {
+			engine.shutdown();
+		}
+	}
+
+	@Test
+	public void missingRowsAreAnError() throws IOException {
+		final PngWriter png = new PngWriter(new ByteArrayOutputStream(), 4, 2);
+		png.writeRow(new int[4]);
+		assertThrows(IllegalStateException.class, new Executable() {
+
+			@Override
+			public void execute() throws IOException {
+				png.close();
+			}
+		});
+	}
+}
@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class PosterRenderTest {
+
+	private static final int WIDTH = 400, HEIGHT = 300, MAX_ITER = 300;
+
+	@TempDir
+	Path dir;
+
+	private static final Viewport VIEW = new Viewport(new BigDecimal("-0.75"), new BigDecimal("0.1"),
+													  0.5, 0.5 * HEIGHT / WIDTH);
+
+	private static PosterRender poster() {
+		return new PosterRender(FractalRenderer.TYPE_MANDELBROT, VIEW, WIDTH, HEIGHT, MAX_ITER,
+								0.0, 0.0, Palette.CLASSIC);
+	}
+
+	/* a scratch file with every strip done only has the PNG left to write */
+	@Test
+	public void finishedScratchFileIsEncodedAgain() throws IOException {
+		final File scratch = dir.resolve("poster.scratch").toFile();
+		final File first = dir.resolve("first.png").toFile();
+		final File again = dir.resolve("again.png").toFile();
+
+		poster().render(scratch, first, 2);
+		assertTimeoutPreemptively(Duration.ofSeconds(10), new Executable() {
+
+			@Override
+			public void execute() throws IOException {
+				poster().render(scratch, again, 2);
+			}
+		});
+		assertArrayEquals(Files.readAllBytes(first.toPath()), Files.readAllBytes(again.toPath()));
+	}
+
+	/* strips of the poster are coloured the way the explorer colours its frames without smoothing */
+	@Test
+	public void posterMatchesRenderedFrame() throws IOException {
+		File png = dir.resolve("poster.png").toFile();
+		poster().render(dir.resolve("poster.scratch").toFile(), png, 2);
+		BufferedImage poster = ImageIO.read(png);
+
+		RenderEngine engine = new RenderEngine(2);
+		try {
+			FractalRenderer renderer = new FractalRenderer(FractalRenderer.TYPE_MANDELBROT, engine);
+			renderer.setSize(WIDTH, HEIGHT);
+			renderer.setMaxIter(MAX_ITER);
+			renderer.setSmooth(false);
+			renderer.setSubdivide(false);
+			renderer.setTileCache(null);
+			renderer.setPalette(Palette.CLASSIC);
+			renderer.setView(VIEW);
+			assertTrue(renderer.render());
+			assertArrayEquals(renderer.getImage().getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH),
+							  poster.getRGB(0, 0, WIDTH, HEIGHT, null, 0, WIDTH));
+		} finally {
+			engine.shutdown();
+		}
+	}
+}
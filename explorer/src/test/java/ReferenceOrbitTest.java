@@ -0,0 +1,23 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+public class ReferenceOrbitTest {
+
+	/*
+	 * far too deep for double-double, every pixel only iterates its difference
+	 * with the reference; the centre escapes a little before maxIter so the
+	 * orbit is taken from another point and the pixels rebase against it
+	 */
+	@Test
+	public void deepZoomMatchesBruteForce() {
+		Viewport view = DoubleDoubleTest.view(DoubleDoubleTest.CENTER_RE, DoubleDoubleTest.CENTER_IM, 1e-40);
+		assertEquals(PrecisionTier.PERTURBATION, PrecisionTier.forView(view, 32, 24));
+
+		long rebases = ReferenceOrbit.getRebases();
+		DoubleDoubleTest.assertMatchesBruteForce(ReferenceOrbit.forView(view, 32, 24, 1000), view, 32, 24, 1000);
+		assertTrue(ReferenceOrbit.getRebases() > rebases);
+	}
+}
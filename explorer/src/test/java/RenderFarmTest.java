@@ -0,0 +1,162 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.util.Collections;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+
+public class RenderFarmTest {
+
+	private static Viewport view(String re, String im, double width, int w, int h) {
+		return new Viewport(new BigDecimal(re), new BigDecimal(im), width, width * h / w);
+	}
+
+	/* the difference with the pixel on the left goes down and up, and starts again on each row */
+	@Test
+	public void tilesDecodeToTheirCounts() throws Exception {
+		Random random = new Random(1);
+		int w = 37, h = 23;
+		int[] counts = new int[w * h];
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = (random.nextInt(4) == 0) ? Integer.MAX_VALUE : random.nextInt(100000);
+
+		byte[] data = RenderFarm.encode(new Deflater(Deflater.BEST_SPEED), counts, w, h);
+		assertArrayEquals(counts, RenderFarm.decode(new Inflater(), data, w, h));
+
+		// a real tile, mostly runs of the same count
+		RenderFarm.Frame frame = new RenderFarm.Frame(FractalRenderer.TYPE_MANDELBROT,
+													  view("-0.745", "0.11", 0.04, 640, 480), 640, 480, 2000, 0.0, 0.0);
+		int size = RenderEngine.TILE_SIZE;
+		int[] tile = new int[size * size];
+		frame.computeTile(128, 64, size, size, tile);
+		data = RenderFarm.encode(new Deflater(Deflater.BEST_SPEED), tile, size, size);
+		assertTrue(data.length < tile.length, "tile deflated to " + data.length + " bytes");
+		assertArrayEquals(tile, RenderFarm.decode(new Inflater(), data, size, size));
+
+		assertThrows(DataFormatException.class, new Executable() {
+
+			@Override
+			public void execute() throws Exception {
+				RenderFarm.decode(new Inflater(), RenderFarm.encode(new Deflater(), counts, w, h), w, h + 1);
+			}
+		});
+	}
+
+	private static byte[] frameBytes(int fractal, int width, int height, int maxIter, double viewWidth)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(fractal);
+		out.writeInt(width);
+		out.writeInt(height);
+		out.writeInt(maxIter);
+		out.writeUTF("-0.5");
+		out.writeUTF("0");
+		out.writeDouble(viewWidth);
+		out.writeDouble(viewWidth);
+		out.writeDouble(0.0);
+		out.writeDouble(0.0);
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static void assertRejected(final byte[] frame) {
+		assertThrows(IOException.class, new Executable() {
+
+			@Override
+			public void execute() throws IOException {
+				RenderFarm.Frame.read(new DataInputStream(new ByteArrayInputStream(frame)));
+			}
+		});
+	}
+
+	/* a worker allocates what the frame says, it only believes sensible ones */
+	@Test
+	public void framesOutOfRangeAreRejected() throws IOException {
+		int mandelbrot = FractalRenderer.TYPE_MANDELBROT;
+		RenderFarm.Frame.read(new DataInputStream(new ByteArrayInputStream(frameBytes(mandelbrot, 640, 480, 1000, 3.0))));
+
+		assertRejected(frameBytes(mandelbrot, 640, 480, RenderFarm.MAX_ITER + 1, 3.0));
+		assertRejected(frameBytes(mandelbrot, 640, 480, 0, 3.0));
+		assertRejected(frameBytes(mandelbrot, RenderFarm.MAX_SIZE + 1, 480, 1000, 3.0));
+		assertRejected(frameBytes(mandelbrot, 640, -1, 1000, 3.0));
+		assertRejected(frameBytes(mandelbrot, 640, 480, 1000, Double.NaN));
+		assertRejected(frameBytes(mandelbrot, 640, 480, 1000, Double.POSITIVE_INFINITY));
+		assertRejected(frameBytes(mandelbrot, 640, 480, 1000, 0.0));
+		assertRejected(frameBytes(7, 640, 480, 1000, 3.0));
+	}
+
+	/*
+	 * a frame of many more tiles than the farm holds at once gets the same
+	 * counts as rendered here, the tiles are given to it as the workers here go
+	 */
+	@Test
+	public void farmFrameMatchesLocalFrame() throws Exception {
+		int port;
+		try (ServerSocket free = new ServerSocket(0)) {
+			port = free.getLocalPort();
+		}
+		final int listen = port;
+		Thread server = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					new FarmWorker(1).serve(FarmWorker.DEFAULT_BIND, listen);
+				} catch (IOException e) {
+					// the test fails on connecting
+				}
+			}
+		}, "farm-worker");
+		server.setDaemon(true);
+		server.start();
+
+		int width = 1280, height = 960;
+		RenderEngine engine = new RenderEngine(2);
+		RenderFarm farm = null;
+		try {
+			for (int i = 0; farm == null; i++) {
+				try {
+					farm = new RenderFarm(Collections.singletonList("localhost:" + port));
+				} catch (IOException e) {
+					if (i == 50)
+						throw e;
+					Thread.sleep(100);
+				}
+			}
+
+			Viewport seahorse = view("-0.745", "0.11", 0.04, width, height);
+			int[][] iter = new int[2][];
+			for (int run = 0; run < 2; run++) {
+				FractalRenderer renderer = new FractalRenderer(FractalRenderer.TYPE_MANDELBROT, engine);
+				renderer.setSize(width, height);
+				renderer.setMaxIter(1000);
+				renderer.setSubdivide(false);
+				renderer.setTileCache(null);
+				renderer.setFarm((run == 0) ? farm : null);
+				renderer.setView(seahorse);
+				assertTrue(renderer.render());
+				iter[run] = renderer.getIterBuffer().clone();
+			}
+			assertArrayEquals(iter[1], iter[0]);
+		} finally {
+			if (farm != null)
+				farm.close();
+			engine.shutdown();
+		}
+	}
+}
@@ -0,0 +1,122 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class TileStoreTest {
+
+	private static final int TILE_BYTES = 4 * TileCache.TILE_SIZE * TileCache.TILE_SIZE;
+
+	@TempDir
+	Path dir;
+
+	private static TileCache.Key key(long tx) {
+		return new TileCache.Key(1e-3, 1e-3, tx, 0, 1000, FractalRenderer.TYPE_MANDELBROT, 0.0, 0.0, 0);
+	}
+
+	private static int[] tile(int seed) {
+		int[] tile = new int[TileCache.TILE_SIZE * TileCache.TILE_SIZE];
+		for (int i = 0; i < tile.length; i++)
+			tile[i] = seed * 31 + i;
+		return tile;
+	}
+
+	/* a tile saved by one explorer is read by another sharing the directory */
+	@Test
+	public void tilesAreReadBackByAnotherStore() throws IOException {
+		File store = dir.toFile();
+		TileStore writer = new TileStore(store, 8 * TILE_BYTES);
+		TileStore reader = new TileStore(store, 8 * TILE_BYTES);
+		assertNull(reader.get(key(1)));
+
+		writer.put(key(1), tile(1));
+		writer.put(key(2), tile(2));
+		assertArrayEquals(tile(1), reader.get(key(1)));
+		assertArrayEquals(tile(2), reader.get(key(2)));
+		assertNull(reader.get(key(3)));
+
+		// and after the process is gone
+		TileStore later = new TileStore(store, 1);
+		assertEquals(8, later.getSlots());
+		TileCache.Key[] keys = { key(1), null, key(3), key(2) };
+		int[][] tiles = new int[keys.length][];
+		assertEquals(2, later.getAll(keys, tiles));
+		assertArrayEquals(tile(1), tiles[0]);
+		assertNull(tiles[1]);
+		assertNull(tiles[2]);
+		assertArrayEquals(tile(2), tiles[3]);
+	}
+
+	/* the tile replaced is the one read the longest ago, reads count as uses */
+	@Test
+	public void leastRecentlyUsedTileIsEvicted() throws IOException, InterruptedException {
+		TileStore store = new TileStore(dir.toFile(), 3 * TILE_BYTES);
+		for (int i = 0; i < 3; i++) {
+			store.put(key(i), tile(i));
+			Thread.sleep(5);
+		}
+		assertNotNull(store.get(key(0)));
+		Thread.sleep(5);
+
+		store.put(key(3), tile(3));
+		assertEquals(1, store.getEvictions());
+		assertNull(store.get(key(1)));
+		assertArrayEquals(tile(0), store.get(key(0)));
+		assertArrayEquals(tile(2), store.get(key(2)));
+		assertArrayEquals(tile(3), store.get(key(3)));
+	}
+
+	/*
+	 * a tile missing from the index read last is missing without locking,
+	 * the lock is only taken for the tiles there or once another explorer wrote
+	 */
+	@Test
+	public void missesDoNotLock() throws IOException {
+		File store = dir.toFile();
+		TileStore explorer = new TileStore(store, 4 * TILE_BYTES);
+		explorer.put(key(1), tile(1));
+
+		try (FileChannel channel = new RandomAccessFile(new File(store, "tiles.idx"), "rw").getChannel()) {
+			// this process holding the file, locking it again would throw
+			FileLock held = channel.lock();
+			try {
+				assertNull(explorer.get(key(2)));
+				assertEquals(1, explorer.getMisses());
+			} finally {
+				held.release();
+			}
+		}
+		assertArrayEquals(tile(1), explorer.get(key(1)));
+		assertEquals(1, explorer.getHits());
+
+		// written by another, the index is read again to find it
+		new TileStore(store, 1).put(key(2), tile(2));
+		assertArrayEquals(tile(2), explorer.get(key(2)));
+	}
+
+	/* locking in an interrupted thread would close the channel of every thread */
+	@Test
+	public void interruptedThreadReadsNothing() throws IOException {
+		TileStore store = new TileStore(dir.toFile(), 4 * TILE_BYTES);
+		store.put(key(1), tile(1));
+
+		Thread.currentThread().interrupt();
+		try {
+			assertNull(store.get(key(1)));
+		} finally {
+			Thread.interrupted();
+		}
+		assertArrayEquals(tile(1), store.get(key(1)));
+	}
+}
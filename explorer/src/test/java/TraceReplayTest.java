@@ -0,0 +1,63 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class TraceReplayTest {
+
+	@TempDir
+	Path dir;
+
+	/* a mandelbrot zoom and a julia point moving faster than its frames are drawn */
+	private File trace() throws IOException {
+		File file = dir.resolve("trace.txt").toFile();
+		InteractionTrace trace = new InteractionTrace(file);
+		Viewport view = new Viewport(new BigDecimal("-0.5"), new BigDecimal("0"), 3.0, 2.4);
+		trace.record(InteractionTrace.INIT, FractalRenderer.TYPE_MANDELBROT, 200, 160, 500, view, null);
+		trace.record(InteractionTrace.ZOOM, FractalRenderer.TYPE_MANDELBROT, 200, 160, 500,
+					 new Viewport(new BigDecimal("-0.745"), new BigDecimal("0.11"), 0.04, 0.032), null);
+
+		Viewport julia = new Viewport(new BigDecimal("0"), new BigDecimal("0"), 3.0, 3.0);
+		for (int i = 0; i < 5; i++)
+			trace.record(InteractionTrace.POINT, FractalRenderer.TYPE_JULIA, 120, 120, 300, julia,
+						 new Complex(-0.8 + 0.01 * i, 0.156));
+		return file;
+	}
+
+	private static List<TraceReplay.Sample> replay(String... args) throws IOException, InterruptedException {
+		TraceReplay replay = new TraceReplay();
+		replay.parse(args);
+		replay.run();
+		return replay.getSamples();
+	}
+
+	/* waiting for the frames of each action, every one is drawn to the end after its first pixels */
+	@Test
+	public void sequentialReplayCompletesEveryAction() throws IOException, InterruptedException {
+		List<TraceReplay.Sample> samples = replay(trace().getPath(), "-sequential", "-nocache");
+		assertEquals(7, samples.size());
+		for (TraceReplay.Sample sample : samples) {
+			assertTrue(sample.firstPixel >= 0, sample.action + " drew nothing");
+			assertTrue(sample.completed >= sample.firstPixel, sample.action + " was not completed");
+		}
+	}
+
+	/* at once, the julia points supersede each other while they rest: only the last one is drawn in full */
+	@Test
+	public void supersededActionsAreNotCompleted() throws IOException, InterruptedException {
+		List<TraceReplay.Sample> samples = replay(trace().getPath(), "-speed", "1000", "-nocache");
+		assertEquals(7, samples.size());
+		assertTrue(samples.get(1).completed >= 0, "the zoom was not completed");
+		assertTrue(samples.get(6).completed >= 0, "the last julia point was not completed");
+		for (int i = 2; i < 6; i++)
+			assertTrue(samples.get(i).completed < 0, "julia point " + i + " was drawn in full");
+	}
+}
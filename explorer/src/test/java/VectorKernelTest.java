@@ -0,0 +1,89 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+
+public class VectorKernelTest {
+
+	private static final int TILE = RenderEngine.TILE_SIZE;
+
+	private final RowKernel vector = new VectorKernel();
+
+	@AfterEach
+	public void restoreShortcuts() {
+		EscapeTime.setCardioidCheck(true);
+		EscapeTime.setPeriodicityCheck(true);
+	}
+
+	/*
+	 * counts and z of a tile of pixels of the given size from (re0, im0), row by row,
+	 * with the vector kernel or point by point with the scalar one
+	 */
+	private static void tile(RowKernel kernel, boolean julia, double re0, double im0, double spacing,
+							 int maxIter, int[] counts, double[] z) {
+		double[] re = new double[TILE];
+		for (int x = 0; x < TILE; x++)
+			re[x] = re0 + x * spacing;
+
+		int[] row = new int[TILE];
+		double[] rowZ = new double[2 * TILE];
+		for (int y = 0; y < TILE; y++) {
+			double im = im0 - y * spacing;
+			if (kernel == null) {
+				for (int x = 0; x < TILE; x++)
+					row[x] = julia ? EscapeTime.julia(re[x], im, -0.8, 0.156, maxIter, rowZ, 2 * x)
+								   : EscapeTime.mandelbrot(re[x], im, maxIter, rowZ, 2 * x);
+			} else if (julia) {
+				kernel.julia(re, im, TILE, -0.8, 0.156, maxIter, row, rowZ);
+			} else {
+				kernel.mandelbrot(re, im, TILE, maxIter, row, rowZ);
+			}
+			System.arraycopy(row, 0, counts, y * TILE, TILE);
+			System.arraycopy(rowZ, 0, z, 2 * y * TILE, 2 * TILE);
+		}
+	}
+
+	private void assertSameTiles(boolean julia, double re0, double im0, double spacing, int maxIter) {
+		int[] scalarCounts = new int[TILE * TILE], vectorCounts = new int[TILE * TILE];
+		double[] scalarZ = new double[2 * TILE * TILE], vectorZ = new double[2 * TILE * TILE];
+
+		EscapeTime.resetCounters();
+		tile(null, julia, re0, im0, spacing, maxIter, scalarCounts, scalarZ);
+		long cardioid = EscapeTime.getCardioidHits(), periodic = EscapeTime.getPeriodicHits();
+		long saved = EscapeTime.getIterationsSaved();
+
+		EscapeTime.resetCounters();
+		tile(vector, julia, re0, im0, spacing, maxIter, vectorCounts, vectorZ);
+
+		String where = (julia ? "julia" : "mandelbrot") + " tile at " + re0 + "," + im0;
+		assertArrayEquals(scalarCounts, vectorCounts, where);
+		assertArrayEquals(scalarZ, vectorZ, where);
+		assertEquals(cardioid, EscapeTime.getCardioidHits(), where);
+		assertEquals(periodic, EscapeTime.getPeriodicHits(), where);
+		assertEquals(saved, EscapeTime.getIterationsSaved(), where);
+	}
+
+	private void assertSameTiles() {
+		// around the cardioid and the bulb, in seahorse valley, on a thin filament
+		assertSameTiles(false, -2.0, 1.2, 3.0 / TILE, 1000);
+		assertSameTiles(false, -0.76, 0.13, 0.02 / TILE, 2000);
+		assertSameTiles(false, -1.25, 0.02, 0.01 / TILE, 5000);
+		assertSameTiles(false, -0.7436447, 0.1318252, 2e-6 / TILE, 5000);
+		assertSameTiles(true, -1.5, 1.0, 3.0 / TILE, 1000);
+		assertSameTiles(true, -0.1, 0.1, 0.05 / TILE, 3000);
+	}
+
+	@Test
+	public void sameTilesWithShortcuts() {
+		assertSameTiles();
+	}
+
+	@Test
+	public void sameTilesWithoutShortcuts() {
+		EscapeTime.setCardioidCheck(false);
+		EscapeTime.setPeriodicityCheck(false);
+		assertSameTiles();
+	}
+}
@@ -0,0 +1,48 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+
+public class ZoomAnimationTest {
+
+	@TempDir
+	Path dir;
+
+	private double[] widths(String keys) throws IOException {
+		File file = dir.resolve("keys.txt").toFile();
+		Files.write(file.toPath(), keys.getBytes("UTF-8"));
+
+		ZoomAnimation animation = new ZoomAnimation();
+		animation.parse(new String[] { "-keys", file.getPath(), "-fpo", "30" });
+		animation.readKeys();
+		return animation.frameWidths();
+	}
+
+	/* one octave in 30 frames, each octave exactly halves the width */
+	@Test
+	public void zoomEndsOnItsKeyframe() throws IOException {
+		double[] w = widths("-0.5 0 1.0 100\n-0.5 0 0.25 100\n");
+		assertEquals(61, w.length);
+		assertEquals(0.5, w[30], 0.0);
+		assertEquals(0.25, w[60], 0.0);
+	}
+
+	/* panning 2 widths takes 60 frames, the one octave of zoom is spread over all of them */
+	@Test
+	public void longerPanEndsOnTheKeyframeWidth() throws IOException {
+		double[] w = widths("-0.5 0 1.0 100\n1.5 0 0.5 100\n");
+		assertEquals(61, w.length);
+		assertEquals(0.5, w[60], 1e-12);
+		for (int j = 1; j < w.length; j++)
+			assertTrue(w[j] < w[j - 1], "width of frame " + j + " does not shrink");
+		// half way through the segment it has zoomed half an octave
+		assertEquals(Math.sqrt(0.5), w[30], 1e-12);
+	}
+}
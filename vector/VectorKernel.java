@@ -0,0 +1,172 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+
+public class VectorKernel implements RowKernel {
+
+	/*
+	 * Escape time kernel iterating one vector of adjacent pixels at once
+	 * with the Java Vector API. Lanes that escaped are masked out of the
+	 * count and the vector stops when no lane is left.
+	 * The operations are the same as the scalar loop, in the same order,
+	 * the shortcuts included (cardioid and bulb, Brent periodicity check on
+	 * every lane), so the counts are identical and the tiles of both kernels
+	 * can be cached together. The pixels that do not fill a whole vector at
+	 * the end of a row go through the scalar kernel.
+	 * Lanes that escaped keep the z they escaped with, as the scalar kernel
+	 * does, so it can be saved for smooth colouring.
+	 *
+	 * Needs the incubator module, compile and run with
+	 * --add-modules jdk.incubator.vector
+	 */
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public void mandelbrot(double[] re, double im, int n, int maxIter, int[] out, double[] z) {
+		int lanes = SPECIES.length();
+		int upper = SPECIES.loopBound(n);
+		double[] counts = new double[lanes];
+		double[] zr = new double[lanes], zi = new double[lanes];
+
+		DoubleVector ci = DoubleVector.broadcast(SPECIES, im);
+		DoubleVector zero = DoubleVector.zero(SPECIES);
+
+		int i = 0;
+		for (; i < upper; i += lanes) {
+			DoubleVector cr = DoubleVector.fromArray(SPECIES, re, i);
+
+			VectorMask<Double> inside = SPECIES.maskAll(false);
+			if (EscapeTime.isCardioidCheck()) {
+				inside = inCardioidOrBulb(cr, ci);
+				int hits = inside.trueCount();
+				if (hits > 0)
+					EscapeTime.countShortcuts(hits, 0, (long) hits * maxIter);
+			}
+
+			iterate(zero, zero, cr, ci, inside, maxIter, zr, zi).intoArray(counts, 0);
+			for (int j = 0; j < lanes; j++)
+				out[i + j] = (int)counts[j];
+			if (z != null)
+				saveZ(zr, zi, z, i);
+		}
+
+		for (; i < n; i++)
+			out[i] = EscapeTime.mandelbrot(re[i], im, maxIter, z, 2 * i);
+	}
+
+	@Override
+	public void julia(double[] re, double im, int n, double cr, double ci, int maxIter, int[] out, double[] z) {
+		int lanes = SPECIES.length();
+		int upper = SPECIES.loopBound(n);
+		double[] counts = new double[lanes];
+		double[] zrs = new double[lanes], zis = new double[lanes];
+
+		DoubleVector zi = DoubleVector.broadcast(SPECIES, im);
+		DoubleVector vcr = DoubleVector.broadcast(SPECIES, cr);
+		DoubleVector vci = DoubleVector.broadcast(SPECIES, ci);
+		VectorMask<Double> none = SPECIES.maskAll(false);
+
+		int i = 0;
+		for (; i < upper; i += lanes) {
+			DoubleVector zr = DoubleVector.fromArray(SPECIES, re, i);
+
+			iterate(zr, zi, vcr, vci, none, maxIter, zrs, zis).intoArray(counts, 0);
+			for (int j = 0; j < lanes; j++)
+				out[i + j] = (int)counts[j];
+			if (z != null)
+				saveZ(zrs, zis, z, i);
+		}
+
+		for (; i < n; i++)
+			out[i] = EscapeTime.julia(re[i], im, cr, ci, maxIter, z, 2 * i);
+	}
+
+	/* z of the lanes from point i on */
+	private static void saveZ(double[] zr, double[] zi, double[] z, int i) {
+		for (int j = 0; j < zr.length; j++) {
+			z[2 * (i + j)] = zr[j];
+			z[2 * (i + j) + 1] = zi[j];
+		}
+	}
+
+	/*
+	 * lanes in inside are already known to be in the set and get maxIter,
+	 * the last z of every lane goes to zrOut and ziOut, NaN for the lanes in the set
+	 */
+	private static DoubleVector iterate(DoubleVector zr, DoubleVector zi, DoubleVector cr, DoubleVector ci,
+										VectorMask<Double> inside, int maxIter, double[] zrOut, double[] ziOut) {
+		DoubleVector count = DoubleVector.zero(SPECIES);
+		VectorMask<Double> active = inside.not();
+		VectorMask<Double> periodic = SPECIES.maskAll(false);
+		boolean periodicity = EscapeTime.isPeriodicityCheck();
+		long saved = 0;
+
+		// saved point of every orbit, the lanes all move it after the same number of iterations
+		DoubleVector sr = zr, si = zi;
+		int steps = 0, limit = 2;
+
+		for (int k = 0; k < maxIter; k++) {
+			DoubleVector zr2 = zr.mul(zr);
+			DoubleVector zi2 = zi.mul(zi);
+
+			active = active.and(zr2.add(zi2).compare(VectorOperators.LT, EscapeTime.BAILOUT_SQUARED));
+			if (!active.anyTrue())
+				break;
+			count = count.add(1.0, active);
+
+			// 2 zr zi + ci, zr + zr is exactly 2 zr
+			DoubleVector nzi = zr.add(zr).mul(zi).add(ci);
+			zr = zr.blend(zr2.sub(zi2).add(cr), active);
+			zi = zi.blend(nzi, active);
+
+			if (periodicity) {
+				// same test as the scalar kernel, the active lanes have all done k + 1 iterations
+				VectorMask<Double> back = active
+						.and(zr.sub(sr).abs().compare(VectorOperators.LT, EscapeTime.PERIOD_EPSILON))
+						.and(zi.sub(si).abs().compare(VectorOperators.LT, EscapeTime.PERIOD_EPSILON));
+				if (back.anyTrue()) {
+					saved += (long) back.trueCount() * (maxIter - (k + 1));
+					periodic = periodic.or(back);
+					active = active.andNot(back);
+				}
+
+				if (++steps == limit) {
+					steps = 0;
+					limit <<= 1;
+					sr = zr;
+					si = zi;
+				}
+			}
+		}
+
+		if (periodic.anyTrue())
+			EscapeTime.countShortcuts(0, periodic.trueCount(), saved);
+
+		VectorMask<Double> bounded = inside.or(periodic);
+		zr.blend(Double.NaN, bounded).intoArray(zrOut, 0);
+		zi.blend(Double.NaN, bounded).intoArray(ziOut, 0);
+		return count.blend((double)maxIter, bounded);
+	}
+
+	/* same test as EscapeTime.inCardioidOrBulb on every lane */
+	private static VectorMask<Double> inCardioidOrBulb(DoubleVector cr, DoubleVector ci) {
+		DoubleVector ci2 = ci.mul(ci);
+
+		DoubleVector xr = cr.sub(0.25);
+		DoubleVector q = xr.mul(xr).add(ci2);
+		VectorMask<Double> cardioid = q.mul(q.add(xr)).compare(VectorOperators.LE, ci2.mul(0.25));
+
+		DoubleVector xb = cr.add(1.0);
+		VectorMask<Double> bulb = xb.mul(xb).add(ci2).compare(VectorOperators.LE, 0.0625);
+
+		return cardioid.or(bulb);
+	}
+
+	@Override
+	public String getName() {
+		return "vector (" + SPECIES.length() + " lanes)";
+	}
+}